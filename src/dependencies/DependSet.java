@@ -1,41 +1,89 @@
 package dependencies;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
-/** DependSet is essentially a set of variable names */
+/** DependSet is essentially a set of variable names.
+ * The variables are numbered by the symbol table of the program and the
+ * set is held as a bit set indexed by variable identifier, so that union,
+ * subset and equality tests work a word of 64 variables at a time.
+ * Sets of variables of the same program share the same symbol table.
+ */
 public class DependSet {
-    
-    /** A SortedSet is used so that the variables print in order */
-    private SortedSet<String> variables;
-    
-    public DependSet( SortedSet<String> variables ) {
-        super();
-        this.variables = variables;
+
+    /** Numbering of the variables */
+    private SymbolTable symbols;
+    /** Bit i of word i/64 is set if and only if variable i is in the set.
+     * Words beyond the end of the array are zero. */
+    private long[] words;
+
+    /** Constructs a set of the given variables */
+    public DependSet( SymbolTable symbols, Collection<String> variables ) {
+        this( symbols );
+        for( String var : variables ) {
+            add( var );
+        }
     }
     /** Constructs an empty set of variables */
-    public DependSet() {
-        this( new TreeSet<String>() );
+    public DependSet( SymbolTable symbols ) {
+        super();
+        this.symbols = symbols;
+        this.words = new long[(symbols.size() + 63) >>> 6];
+    }
+    /** Constructs a set from a bit set, which is not copied */
+    DependSet( SymbolTable symbols, long[] words ) {
+        super();
+        this.symbols = symbols;
+        this.words = words;
+    }
+    /** Constructs a set with a single variable in it */
+    public DependSet( SymbolTable symbols, String var ) {
+        this( symbols );
+        add( var );
+    }
+    /** @return the symbol table numbering the variables */
+    public SymbolTable getSymbols() {
+        return symbols;
     }
-    /** Constructs a sey with a single variable in it */
-    public DependSet( String var ) {
-        this();
-        variables.add( var );
+    /** @return the bit set of the variables, which may be shared */
+    long[] getWords() {
+        return words;
     }
     /** @return true if and only if the sets of variables are equal */
     @Override
     public boolean equals( Object other ) {
-        return other instanceof DependSet && 
-            variables.equals( ((DependSet)other).variables );
+        if( !(other instanceof DependSet) ) {
+            return false;
+        }
+        return equalWords( words, ((DependSet)other).words );
+    }
+    /** @return a hash code consistent with equals */
+    @Override
+    public int hashCode() {
+        long h = 0;
+        for( int i = 0; i < words.length; i++ ) {
+            h ^= words[i] * (i + 1);
+        }
+        return (int)(h ^ (h >>> 32));
     }
     /** @return true if and only if the set of variables is empty */
     public boolean isEmpty() {
-        return variables.isEmpty();
+        return isZero( words, 0 );
+    }
+    /** @return the number of variables in the set */
+    public int size() {
+        int count = 0;
+        for( long w : words ) {
+            count += Long.bitCount( w );
+        }
+        return count;
     }
     /** @return a copy of this set of variables */
     public DependSet copy() {
-        DependSet copy =  new DependSet();
-        copy.addAll( this );
+        DependSet copy =  new DependSet( symbols );
+        copy.words = words.clone();
         return copy;
     }
     /** Add the variables in the other set to this set
@@ -43,26 +91,116 @@ public class DependSet {
      * @return true if and only if this set is changed
      */
     public boolean merge( DependSet other ) {
-        if( variables.containsAll( other.variables ) ) {
-            return false;
+        assert symbols == other.symbols;
+        long[] b = other.words;
+        boolean changed = false;
+        for( int i = 0; i < b.length; i++ ) {
+            long w = i < words.length ? words[i] : 0;
+            if( (b[i] & ~w) != 0 ) {
+                changed = true;
+                break;
+            }
+        }
+        if( changed ) {
+            addAll( other );
+        }
+        return changed;
+    }
+    /** @return true if and only if every variable of other is in this set */
+    public boolean containsAll( DependSet other ) {
+        long[] b = other.words;
+        for( int i = 0; i < b.length; i++ ) {
+            long w = i < words.length ? words[i] : 0;
+            if( (b[i] & ~w) != 0 ) {
+                return false;
+            }
         }
-        variables.addAll( other.variables );
         return true;
     }
-    /** @return the set of variables */
+    /** @return true if and only if the variable is in the set */
+    public boolean contains( String name ) {
+        int id = symbols.lookup( name );
+        return id >= 0 && contains( id );
+    }
+    /** @return true if and only if the variable with identifier id is in
+     *  the set */
+    public boolean contains( int id ) {
+        int i = id >>> 6;
+        return i < words.length && (words[i] & (1L << id)) != 0;
+    }
+    /** @return the smallest identifier of a variable in the set that is
+     *  at least from, or -1 if there is none */
+    public int next( int from ) {
+        int i = from >>> 6;
+        if( i >= words.length ) {
+            return -1;
+        }
+        long w = words[i] & (-1L << from);
+        while( w == 0 ) {
+            if( ++i == words.length ) {
+                return -1;
+            }
+            w = words[i];
+        }
+        return (i << 6) + Long.numberOfTrailingZeros( w );
+    }
+    /** @return the names of the variables in the set, in order. The set
+     *  returned is a new set, so changing it does not affect this set. */
     public SortedSet<String> getDependencies() {
-        return variables;
+        SortedSet<String> names = new TreeSet<String>();
+        for( int id = next( 0 ); id >= 0; id = next( id + 1 ) ) {
+            names.add( symbols.name( id ) );
+        }
+        return names;
+    }
+    /** Add a variable to the set */
+    public void add( String name ) {
+        add( symbols.intern( name ) );
     }
-    /** Add a variable tot he set */
-    public void add(String name) {
-        variables.add( name );
+    /** Add the variable with identifier id to the set */
+    public void add( int id ) {
+        ensureCapacity( (id >>> 6) + 1 );
+        words[id >>> 6] |= 1L << id;
     }
     /** Add all the variables from another set */
     public void addAll( DependSet vars ) {
-        variables.addAll( vars.variables );
+        assert symbols == vars.symbols;
+        long[] b = vars.words;
+        ensureCapacity( b.length );
+        for( int i = 0; i < b.length; i++ ) {
+            words[i] |= b[i];
+        }
     }
     /** @return a printable version of the set of variables */
     public String toString() {
-        return variables.toString();
+        return getDependencies().toString();
+    }
+
+    /** Make room for at least count words */
+    private void ensureCapacity( int count ) {
+        if( count > words.length ) {
+            words = Arrays.copyOf( words,
+                    Math.max( count, (symbols.size() + 63) >>> 6 ) );
+        }
+    }
+    /** @return true if and only if two bit sets have the same bits set,
+     *  where either may be shorter than the other */
+    static boolean equalWords( long[] a, long[] b ) {
+        int common = Math.min( a.length, b.length );
+        for( int i = 0; i < common; i++ ) {
+            if( a[i] != b[i] ) {
+                return false;
+            }
+        }
+        return isZero( a, common ) && isZero( b, common );
+    }
+    /** @return true if and only if the words from start on are all zero */
+    static boolean isZero( long[] a, int start ) {
+        for( int i = start; i < a.length; i++ ) {
+            if( a[i] != 0 ) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -1,37 +1,78 @@
 package dependencies;
 
 //import java.io.PrintStream;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.SortedMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
+/**
+ * Dependencies maps each variable to the set of variables it depends on.
+ * The dependencies are held as a bit matrix with a row for each variable,
+ * indexed by the identifiers of the symbol table of the program: bit j of
+ * row i is set if variable i depends on variable j. A variable has a row
+ * if and only if it has dependencies, which may be empty.
+ * <p>
+ * The rows are held in a persistent trie with 32 children per node,
+ * indexed by successive 5-bit digits of the variable identifier. Rows and
+ * trie nodes are never changed once built: an update copies only the path
+ * from the root to the row it replaces and shares everything else. A
+ * Dependencies object is a handle to a trie, so copy takes constant time,
+ * an assignment takes time logarithmic in the number of variables (plus
+ * the OR of the rows of the expression's variables), and equality and
+ * merge skip any subtries that the two sides share.
+ * <p>
+ * The rows themselves are interned in the row pool of the symbol table,
+ * so equal rows at different nodes are usually one shared array and the
+ * union of a pair of rows is calculated once.
+ */
 public class Dependencies {
 
+    /** Number of identifier bits per trie level */
+    private static final int BITS = 5;
+    /** Number of children of a trie node */
+    private static final int WIDTH = 1 << BITS;
+
+    /** Numbering of the variables, or null until the first variable is
+     * added */
+    private SymbolTable symbols;
     /**
-     * Maps each variable name to the names of variables it depends on. A
-     * SortedMap is used so that dependencies print in order.
+     * Root of the trie, or null if no variable has dependencies. A node at
+     * level shift is an Object[WIDTH] whose i-th child holds the
+     * identifiers with digit i at bit position shift; the children of a
+     * node at level 0 are the rows, which are long[] bit sets. A null
+     * child holds no rows.
      */
-    private SortedMap<String, DependSet> dependencies;
+    private Object root;
+    /** Level of the root, so the trie holds identifiers below
+     * 1 << (shift + BITS) */
+    private int shift;
 
     /** Construct empty dependencies */
     public Dependencies() {
         super();
-        dependencies = new TreeMap<String, DependSet>();
+        root = null;
+        shift = 0;
     }
 
-    /** Add a dependency between a variable and a set of variables */
+    /** Add a dependency between a variable and a set of variables.
+     * The set of variables is copied, or shared with an equal row of the
+     * pool. */
     public Dependencies put(String var, DependSet vars) {
-        dependencies.put(var, vars);
+        useSymbols(vars.getSymbols());
+        setRow(symbols.intern(var), symbols.getRows().intern(vars.getWords()));
         return this;
     }
 
     /**
      * Get a DependSet of a variable
-     * 
-     * @return DependSet of Variable
+     *
+     * @return DependSet of Variable, which is a copy, or null if the
+     *         variable has no dependencies
      */
     public DependSet get(String var) {
-        return dependencies.get(var);
+        long[] row = symbols == null ? null : getRow(symbols.lookup(var));
+        return row == null ? null : new DependSet(symbols, row.clone());
     }
 
     /**
@@ -39,38 +80,54 @@ public class Dependencies {
      * variables
      */
     public boolean equals(Dependencies other) {
-        return dependencies.equals(other.dependencies);
+        return equal(root, shift, other.root, other.shift);
     }
 
-    /** Construct dependencies that are a copy of this */
+    /** Construct dependencies that are a copy of this. As the trie is
+     * never changed the copy shares it. */
     public Dependencies copy() {
         Dependencies newCopy = new Dependencies();
-        for (SortedMap.Entry<String, DependSet> 
-                entry : dependencies.entrySet()) {
-            newCopy.dependencies.put(entry.getKey(), entry.getValue().copy());
-        }
+        newCopy.symbols = symbols;
+        newCopy.root = root;
+        newCopy.shift = shift;
         return newCopy;
     }
 
     public String toString() {
-        String result = "{";
+        // Print the variables in order of name
+        final List<Integer> ids = new ArrayList<Integer>();
+        final List<long[]> rows = new ArrayList<long[]>();
+        collect(root, shift, 0, ids, rows);
+        Integer[] order = new Integer[ids.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return symbols.name(ids.get(a)).compareTo(
+                        symbols.name(ids.get(b)));
+            }
+        });
+        StringBuilder result = new StringBuilder("{");
         String sep = " ";
-        for (SortedMap.Entry<String, DependSet> 
-                entry : dependencies.entrySet()) {
+        for (int i : order) {
+            long[] row = rows.get(i);
             // Omit any empty dependencies when printing
-            if (!entry.getValue().isEmpty()) {
-                result += sep + "(" + entry.getKey() + ","
-                        + entry.getValue().getDependencies() + ")";
+            if (!DependSet.isZero(row, 0)) {
+                result.append(sep).append("(")
+                        .append(symbols.name(ids.get(i))).append(",")
+                        .append(new DependSet(symbols, row).getDependencies())
+                        .append(")");
                 sep = ", ";
             }
         }
-        return result + " }";
+        return result.append(" }").toString();
     }
 
     /**
      * Add a dependency between a variable and a set of variables Ensure
      * dependencies are linked with previous dependencies
-     * 
+     *
      * @param variable
      *            to be added with dependencies
      * @param expression
@@ -78,44 +135,271 @@ public class Dependencies {
      * @return Dependencies with added dependency
      */
     public Dependencies add(String variable, DependSet expression) {
-        SortedSet<String> vars = expression.getDependencies();
-        DependSet newSet = new DependSet();
+        return assign(variable, expression, this);
+    }
 
-        for (String var : vars) {
-            DependSet set = dependencies.get(var);
-            if (set != null) {
-                newSet.merge(set);
+    /**
+     * Set the dependencies of a variable to those of a set of variables in
+     * other dependencies, as for add
+     *
+     * @param variable
+     *            to be added with dependencies
+     * @param expression
+     *            DependSet of variable
+     * @param from
+     *            dependencies of the variables of the expression
+     * @return Dependencies with added dependency
+     */
+    Dependencies assign(String variable, DependSet expression,
+            Dependencies from) {
+        useSymbols(expression.getSymbols());
+        RowPool pool = symbols.getRows();
+        long[] newRow = null;
+
+        for (int id = expression.next(0); id >= 0;
+                id = expression.next(id + 1)) {
+            long[] row = from.getRow(id);
+            if (row != null) {
+                // Rows are never changed, so a single row can be shared
+                newRow = newRow == null ? row : pool.union(newRow, row);
             }
         }
 
-        dependencies.put(variable, newSet);
+        setRow(symbols.intern(variable),
+                newRow == null ? pool.empty() : newRow);
         return this;
     }
 
     /**
      * Merge two Dependencies If a key appears in either Dependencies, it must
      * appear in the merged Dependencies with a combined DependSet.
-     * 
+     *
      * @param deps
      *            Dependencies to be merged
      * @return Merged Dependencies
      */
     public Dependencies merge(Dependencies deps) {
-        // Check for keys in Dependencies 1
-        for (String key : dependencies.keySet()) {
-            if (deps.dependencies.containsKey(key)) {
-                dependencies.get(key).merge(deps.get(key));
+        merge(deps, null);
+        return this;
+    }
+
+    /**
+     * Merge other dependencies into these, as for merge, and record what
+     * changed. The changes are themselves dependencies: for each variable
+     * that had no dependencies the variables it now depends on, and for
+     * each variable whose dependencies grew the variables added.
+     *
+     * @param deps
+     *            Dependencies to be merged
+     * @return the changes, or null if nothing changed
+     */
+    public Dependencies mergeChanges(Dependencies deps) {
+        Dependencies changes = new Dependencies();
+        changes.symbols = deps.symbols;
+        merge(deps, changes);
+        return changes.root == null ? null : changes;
+    }
+
+    /** Merge other dependencies into these, adding the changes to changes
+     * unless it is null */
+    private void merge(Dependencies deps, Dependencies changes) {
+        if (deps.root == null) {
+            return;
+        }
+        useSymbols(deps.symbols);
+        Object other = deps.root;
+        int otherShift = deps.shift;
+        // Bring both tries to the same level
+        while (shift < otherShift) {
+            grow();
+        }
+        while (otherShift < shift) {
+            Object[] node = new Object[WIDTH];
+            node[0] = other;
+            other = node;
+            otherShift += BITS;
+        }
+        root = merge(root, other, shift, 0, symbols.getRows(), changes);
+    }
+
+    /** Set the symbol table on first use */
+    private void useSymbols(SymbolTable table) {
+        assert symbols == null || symbols == table;
+        symbols = table;
+    }
+
+    /** @return the row of the variable with identifier id, or null if it
+     *  has no dependencies */
+    private long[] getRow(int id) {
+        if (id < 0 || (id >>> shift) >= WIDTH) {
+            return null;
+        }
+        Object node = root;
+        for (int level = shift; node != null && level > 0; level -= BITS) {
+            node = ((Object[]) node)[(id >>> level) & (WIDTH - 1)];
+        }
+        return node == null ? null
+                : (long[]) ((Object[]) node)[id & (WIDTH - 1)];
+    }
+
+    /** Replace the row of the variable with identifier id, copying the
+     * path to it */
+    private void setRow(int id, long[] row) {
+        while ((id >>> shift) >= WIDTH) {
+            grow();
+        }
+        root = set(root, shift, id, row);
+    }
+
+    /** Add a level above the root */
+    private void grow() {
+        if (root != null) {
+            Object[] node = new Object[WIDTH];
+            node[0] = root;
+            root = node;
+        }
+        shift += BITS;
+    }
+
+    /** @return a copy of node at level with the row of id replaced */
+    private static Object set(Object node, int level, int id, long[] row) {
+        Object[] copy = node == null ? new Object[WIDTH]
+                : ((Object[]) node).clone();
+        int digit = (id >>> level) & (WIDTH - 1);
+        copy[digit] = level == 0 ? row
+                : set(copy[digit], level - BITS, id, row);
+        return copy;
+    }
+
+    /** @return the row-wise OR of two tries at the same level, sharing a
+     *  whenever b adds nothing to it. The rows of b not already in a, and
+     *  the bits b adds to the others, are added to changes unless it is
+     *  null; base gives the identifiers held by the tries. */
+    private static Object merge(Object a, Object b, int level, int base,
+            RowPool pool, Dependencies changes) {
+        if (a == b || b == null) {
+            return a;
+        }
+        if (a == null) {
+            if (changes != null) {
+                List<Integer> ids = new ArrayList<Integer>();
+                List<long[]> rows = new ArrayList<long[]>();
+                collect(b, level, base, ids, rows);
+                for (int i = 0; i < ids.size(); i++) {
+                    changes.setRow(ids.get(i), rows.get(i));
+                }
             }
+            return b;
         }
+        Object[] nodeA = (Object[]) a;
+        Object[] nodeB = (Object[]) b;
+        Object[] result = nodeA;
+        for (int i = 0; i < WIDTH; i++) {
+            Object child;
+            if (level == 0) {
+                long[] rowA = (long[]) nodeA[i];
+                long[] row = mergeRows(rowA, (long[]) nodeB[i], pool);
+                if (changes != null && row != rowA) {
+                    changes.setRow(base | i, rowA == null ? row
+                            : pool.difference(row, rowA));
+                }
+                child = row;
+            } else {
+                child = merge(nodeA[i], nodeB[i], level - BITS,
+                        base | (i << level), pool, changes);
+            }
+            if (child != nodeA[i]) {
+                if (result == nodeA) {
+                    result = nodeA.clone();
+                }
+                result[i] = child;
+            }
+        }
+        return result;
+    }
 
-        // Check for keys in Dependencies 2
-        for (String key : deps.dependencies.keySet()) {
-            // Already checked Dependencies 1, so nothing to merge - just add
-            if (!dependencies.containsKey(key)) {
-                dependencies.put(key, deps.get(key));
+    /** @return the OR of two rows, either of which may be null, sharing a
+     *  if b adds nothing to it */
+    private static long[] mergeRows(long[] a, long[] b, RowPool pool) {
+        if (a == null) {
+            return b;
+        }
+        return b == null ? a : pool.union(a, b);
+    }
+
+    /** @return true if and only if two tries hold equal rows */
+    private static boolean equal(Object a, int levelA, Object b, int levelB) {
+        // A trie with a higher root holds the lower one in its first child
+        while (levelA > levelB && a != null) {
+            if (!restEmpty((Object[]) a)) {
+                return false;
             }
+            a = ((Object[]) a)[0];
+            levelA -= BITS;
         }
+        while (levelB > levelA && b != null) {
+            if (!restEmpty((Object[]) b)) {
+                return false;
+            }
+            b = ((Object[]) b)[0];
+            levelB -= BITS;
+        }
+        return equal(a, b, Math.min(levelA, levelB));
+    }
 
-        return this;
+    /** @return true if and only if two tries at the same level hold equal
+     *  rows */
+    private static boolean equal(Object a, Object b, int level) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        Object[] nodeA = (Object[]) a;
+        Object[] nodeB = (Object[]) b;
+        for (int i = 0; i < WIDTH; i++) {
+            if (level == 0) {
+                long[] rowA = (long[]) nodeA[i];
+                long[] rowB = (long[]) nodeB[i];
+                if (rowA != rowB && (rowA == null || rowB == null
+                        || !DependSet.equalWords(rowA, rowB))) {
+                    return false;
+                }
+            } else if (!equal(nodeA[i], nodeB[i], level - BITS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return true if and only if all but the first child are null */
+    private static boolean restEmpty(Object[] node) {
+        for (int i = 1; i < WIDTH; i++) {
+            if (node[i] != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Collect the identifiers and rows of a trie in identifier order */
+    private static void collect(Object node, int level, int base,
+            List<Integer> ids, List<long[]> rows) {
+        if (node == null) {
+            return;
+        }
+        Object[] children = (Object[]) node;
+        for (int i = 0; i < WIDTH; i++) {
+            int id = base | (i << level);
+            if (level == 0) {
+                if (children[i] != null) {
+                    ids.add(id);
+                    rows.add((long[]) children[i]);
+                }
+            } else {
+                collect(children[i], level - BITS, id, ids, rows);
+            }
+        }
     }
 }
@@ -0,0 +1,774 @@
+package dependencies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import dependencies.Primitive.NullStatement;
+import dependencies.Statement.Compound;
+import dependencies.Statement.Repeat;
+import dependencies.Statement.Select;
+import graphs.DGraphAdj;
+import graphs.Graph.AdjacentEdge;
+import graphs.Traversals;
+
+/**
+ * A session of edits to a program, each of which replaces, inserts or
+ * deletes a statement and updates the dependencies incrementally.
+ * <p>
+ * The session keeps its own control flow graph, as the program's graph
+ * may be coalesced and is immutable. It is built with adjacency lists,
+ * and records the entry and exit nodes of every statement, so that an
+ * edit removes the edges of the old statement and builds the new one
+ * between the same nodes. The nodes inside a removed statement are
+ * removed from the graph.
+ * <p>
+ * Every node has a rank, which orders the nodes topologically once the
+ * edges that close loops are ignored. The nodes of a new statement are
+ * ranked between the nodes either side of it, so the ranks are kept up
+ * to date without renumbering the graph. A node whose incoming edges
+ * have changed is recalculated from the nodes before it, in order of
+ * rank, and only if its dependencies change are the nodes after it
+ * recalculated in turn. A node on a loop belongs to the strongly
+ * connected component made up of the outermost repeat statement around
+ * it, which is read off the statements rather than searched for in the
+ * graph; the whole component starts again from nothing and is iterated
+ * until it settles, so that dependencies that no longer hold are dropped.
+ * The work of an edit therefore depends on the statements it changes and
+ * the loops around them, and not on the size of the program, and the
+ * dependencies are the same as for a full analysis of the edited program.
+ * <p>
+ * The statements of the program are changed in place. A deleted
+ * statement of a compound statement is replaced by a null statement,
+ * which has the same effect on the dependencies, so that the nodes either
+ * side of it need not be merged. A statement inserted next to another
+ * outside a select statement is put, together with that statement, in a
+ * new compound statement, which takes the place of the statement. A
+ * statement must not be added to the program more than once.
+ */
+public class EditSession {
+
+    /** Entry and exit nodes of a statement in the flow graph, and its
+     * place in the program */
+    private static class Region {
+        ControlFlowNode entry, exit;
+        /** Statement containing the statement, or null for the body */
+        Statement parent;
+        /** Index of the statement in its parent, if that is a compound
+         * statement */
+        int slot;
+        /** For a repeat statement, its edges entry -> exit,
+         * entry -> start of body, end of body -> exit and
+         * end of body -> start of body */
+        Primitive[] nulls;
+
+        Region(ControlFlowNode entry, ControlFlowNode exit) {
+            super();
+            this.entry = entry;
+            this.exit = exit;
+        }
+    }
+
+    /** Flow graph that records the region of each statement as it is
+     * built */
+    private class TrackedFlowGraph extends FlowGraph {
+
+        TrackedFlowGraph() {
+            super(adjacency, new ControlFlowNode(), new ControlFlowNode());
+            graph.addVertex(entry);
+            graph.addVertex(exit);
+        }
+
+        @Override
+        public void buildPrimitive(ControlFlowNode entry,
+                ControlFlowNode exit, Primitive statement) {
+            regions.put(statement, new Region(entry, exit));
+            // Every statement keeps its own edge, even a null statement
+            // that FlowGraph would leave out, so that it can be removed
+            graph.addEdge(entry, exit, statement);
+        }
+
+        /** As for FlowGraph.buildCompound, but recording the position of
+         * each statement and the nodes between them */
+        @Override
+        public void buildCompound(ControlFlowNode entry, ControlFlowNode exit,
+                Compound compound) {
+            regions.put(compound, new Region(entry, exit));
+            super.buildCompound(entry, exit, compound);
+            grow();
+            int slot = 0;
+            for (Statement statement : compound.getStatements()) {
+                Region region = regions.get(statement);
+                region.parent = compound;
+                region.slot = slot;
+                if (slot++ > 0) {
+                    owners[adjacency.index(region.entry)] = compound;
+                }
+            }
+        }
+
+        @Override
+        public void buildSelect(ControlFlowNode entry, ControlFlowNode exit,
+                Select select) {
+            regions.put(select, new Region(entry, exit));
+            super.buildSelect(entry, exit, select);
+            for (Statement statement : select.getStatements()) {
+                regions.get(statement).parent = select;
+            }
+        }
+
+        /** As for FlowGraph.buildRepeat, but recording the null edges */
+        @Override
+        public void buildRepeat(ControlFlowNode entry, ControlFlowNode exit,
+                Repeat repeat) {
+            Region region = new Region(entry, exit);
+            region.nulls = new Primitive[4];
+            for (int i = 0; i < region.nulls.length; i++) {
+                region.nulls[i] = new NullStatement(repeat.pos);
+            }
+            regions.put(repeat, region);
+            ControlFlowNode enterBody = newNode();
+            ControlFlowNode exitBody = newNode();
+            owners[adjacency.index(enterBody)] = repeat;
+            owners[adjacency.index(exitBody)] = repeat;
+            adjacency.addEdge(entry, exit, region.nulls[0]);
+            adjacency.addEdge(entry, enterBody, region.nulls[1]);
+            adjacency.addEdge(exitBody, exit, region.nulls[2]);
+            adjacency.addEdge(exitBody, enterBody, region.nulls[3]);
+            repeat.getStatement().buildGraph(enterBody, exitBody, this);
+            regions.get(repeat.getStatement()).parent = repeat;
+        }
+    }
+
+    /** Nodes waiting to be recalculated, taken in order of rank */
+    private class Queue {
+        private PriorityQueue<ControlFlowNode> queue;
+        /** Nodes in the queue; a node taken out of the set is skipped */
+        private Set<ControlFlowNode> queued;
+
+        Queue() {
+            super();
+            queue = new PriorityQueue<ControlFlowNode>(16, byRank);
+            queued = nodeSet();
+        }
+
+        void add(ControlFlowNode node) {
+            if (queued.add(node)) {
+                queue.add(node);
+            }
+        }
+
+        /** Take a node out of the queue if it is in it */
+        void discard(ControlFlowNode node) {
+            queued.remove(node);
+        }
+
+        boolean isEmpty() {
+            while (!queue.isEmpty() && !queued.contains(queue.peek())) {
+                queue.remove();
+            }
+            return queue.isEmpty();
+        }
+
+        /** @return the node of least rank, which is removed */
+        ControlFlowNode remove() {
+            isEmpty();
+            ControlFlowNode node = queue.remove();
+            queued.remove(node);
+            return node;
+        }
+    }
+
+    /** Bits of rank between consecutive nodes when the nodes are
+     * renumbered, leaving room for the nodes of new statements */
+    private static final int SPACING = 32;
+
+    /** Program being edited */
+    private Program program;
+    /** Body of the program */
+    private Statement body;
+    /** Graph of the flow graph, which may be changed */
+    private DGraphAdj<ControlFlowNode, Primitive> adjacency;
+    /** Flow graph of the program */
+    private TrackedFlowGraph flowGraph;
+    /** Region of each statement of the program */
+    private Map<Statement, Region> regions;
+    /** Dependencies at the start of the program */
+    private Dependencies entryDependencies;
+    /** Dependencies of each node, indexed as the graph, null if it is not
+     * reached */
+    private Dependencies[] depends;
+    /** Rank of each node, indexed as the graph */
+    private long[] ranks;
+    /** Statement whose flow graph added each node, indexed as the graph;
+     * null for the entry and exit of the program */
+    private Statement[] owners;
+    /** Orders nodes by rank */
+    private Comparator<ControlFlowNode> byRank;
+    /** Nodes whose incoming edges have changed since the last
+     * recalculation */
+    private List<ControlFlowNode> changed;
+    /** Nodes of removed statements, to be removed from the graph */
+    private List<ControlFlowNode> removed;
+    /** Dependencies at the exit */
+    private Dependencies dependencies;
+
+    /**
+     * Start an edit session, which analyses the program in full
+     *
+     * @param program
+     *            to be edited
+     */
+    public EditSession(Program program) {
+        super();
+        this.program = program;
+        this.body = program.getBody();
+        this.adjacency = new DGraphAdj<ControlFlowNode, Primitive>();
+        this.regions = new IdentityHashMap<Statement, Region>();
+        this.depends = new Dependencies[0];
+        this.ranks = new long[0];
+        this.owners = new Statement[0];
+        this.flowGraph = new TrackedFlowGraph();
+        body.buildGraph(flowGraph.entry, flowGraph.exit, flowGraph);
+        // A body without compound statements adds nodes without growing
+        // the arrays indexed by node
+        grow();
+        this.entryDependencies = program.entryDependencies();
+        this.changed = new ArrayList<ControlFlowNode>();
+        this.removed = new ArrayList<ControlFlowNode>();
+        this.byRank = new Comparator<ControlFlowNode>() {
+            public int compare(ControlFlowNode a, ControlFlowNode b) {
+                long x = rank(a);
+                long y = rank(b);
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        };
+        // The first analysis is in full, with the worklist solver
+        dependencies = flowGraph.calculateDependencies(entryDependencies);
+        int[] order = Traversals.reversePostorder(adjacency,
+                adjacency.index(flowGraph.entry));
+        for (int v = 0; v < order.length; v++) {
+            if (order[v] >= 0) {
+                depends[v] = adjacency.vertex(v).getDepends();
+                ranks[v] = (long) order[v] << SPACING;
+            }
+        }
+        program.edited(body, dependencies);
+    }
+
+    /** @return the dependencies at the end of the program */
+    public Dependencies getDependencies() {
+        return dependencies;
+    }
+
+    /** @return the body of the program */
+    public Statement getBody() {
+        return body;
+    }
+
+    /**
+     * @return the number of statements evaluated in updating the
+     *         dependencies for the last edit
+     */
+    public long getEvaluations() {
+        return flowGraph.getEvaluations();
+    }
+
+    /**
+     * Replace a statement of the program
+     *
+     * @param statement
+     *            of the program to be replaced
+     * @param replacement
+     *            new statement
+     * @return the dependencies at the end of the edited program
+     */
+    public Dependencies replace(Statement statement, Statement replacement) {
+        Region region = region(statement);
+        build(replacement, region.entry, region.exit);
+        substitute(statement, replacement);
+        remove(statement);
+        return recalculate();
+    }
+
+    /**
+     * Delete a statement of the program. A branch of a select statement
+     * with other branches is removed; any other statement is replaced by a
+     * null statement.
+     *
+     * @param statement
+     *            of the program to be deleted
+     * @return the dependencies at the end of the edited program
+     */
+    public Dependencies delete(Statement statement) {
+        Region region = region(statement);
+        Statement parent = region.parent;
+        if (parent instanceof Select
+                && ((Select) parent).getStatements().size() > 1) {
+            remove(statement);
+            changed.add(region.exit);
+            ((Select) parent).getStatements().remove(statement);
+            return recalculate();
+        }
+        return replace(statement, new NullStatement(statement.pos));
+    }
+
+    /**
+     * Insert a statement before a statement of the program, or as another
+     * branch if it is a branch of a select statement
+     *
+     * @param statement
+     *            of the program
+     * @param inserted
+     *            new statement
+     * @return the dependencies at the end of the edited program
+     */
+    public Dependencies insertBefore(Statement statement, Statement inserted) {
+        return insert(statement, inserted, true);
+    }
+
+    /**
+     * Insert a statement after a statement of the program, or as another
+     * branch if it is a branch of a select statement
+     *
+     * @param statement
+     *            of the program
+     * @param inserted
+     *            new statement
+     * @return the dependencies at the end of the edited program
+     */
+    public Dependencies insertAfter(Statement statement, Statement inserted) {
+        return insert(statement, inserted, false);
+    }
+
+    /** Insert a statement before or after a statement */
+    private Dependencies insert(Statement statement, Statement inserted,
+            boolean before) {
+        Region region = region(statement);
+        Statement parent = region.parent;
+        if (parent instanceof Select) {
+            build(inserted, region.entry, region.exit);
+            regions.get(inserted).parent = parent;
+            ((Select) parent).getStatements().add(inserted);
+        } else {
+            // Split the region of the statement at a new node, and put the
+            // two statements in a compound statement in its place
+            ControlFlowNode entry = region.entry;
+            ControlFlowNode exit = region.exit;
+            ControlFlowNode middle = newNode();
+            List<Statement> pair = new ArrayList<Statement>();
+            if (before) {
+                moveEntry(statement, middle);
+                place(Collections.singletonList(middle), entry,
+                        firstSuccessor(middle));
+                build(inserted, entry, middle);
+                pair.add(inserted);
+                pair.add(statement);
+            } else {
+                moveExit(statement, middle);
+                place(Collections.singletonList(middle),
+                        lastPredecessor(middle), exit);
+                build(inserted, middle, exit);
+                pair.add(statement);
+                pair.add(inserted);
+            }
+            changed.add(middle);
+            Compound compound = new Compound(statement.pos, pair);
+            regions.put(compound, new Region(entry, exit));
+            owners[adjacency.index(middle)] = compound;
+            substitute(statement, compound);
+            for (int i = 0; i < pair.size(); i++) {
+                Region part = regions.get(pair.get(i));
+                part.parent = compound;
+                part.slot = i;
+            }
+        }
+        return recalculate();
+    }
+
+    /** Put a statement whose flow graph has been built in the place of a
+     * statement of the program */
+    private void substitute(Statement statement, Statement replacement) {
+        Region region = regions.get(statement);
+        Statement parent = region.parent;
+        regions.get(replacement).parent = parent;
+        if (parent == null) {
+            body = replacement;
+        } else if (parent instanceof Compound) {
+            ((Compound) parent).getStatements().set(region.slot, replacement);
+            regions.get(replacement).slot = region.slot;
+        } else if (parent instanceof Select) {
+            ((Select) parent).getStatements().remove(statement);
+            ((Select) parent).getStatements().add(replacement);
+        } else {
+            ((Repeat) parent).setStatement(replacement);
+        }
+    }
+
+    /** Build the flow graph of a new statement of the program, ranking
+     * its nodes between its entry and exit */
+    private void build(Statement statement, ControlFlowNode entry,
+            ControlFlowNode exit) {
+        assert !regions.containsKey(statement);
+        int first = adjacency.size();
+        statement.buildGraph(entry, exit, flowGraph);
+        grow();
+        List<ControlFlowNode> nodes = newNodes(entry, first);
+        place(nodes, entry, exit);
+        changed.addAll(nodes);
+        changed.add(exit);
+    }
+
+    /** Remove the edges of a statement of the program, and forget it and
+     * the statements it contains */
+    private void remove(Statement statement) {
+        Region region = regions.remove(statement);
+        if (statement instanceof Primitive) {
+            adjacency.removeEdge(region.entry, region.exit,
+                    (Primitive) statement);
+        } else if (statement instanceof Compound) {
+            boolean first = true;
+            for (Statement s : ((Compound) statement).getStatements()) {
+                if (!first) {
+                    removed.add(regions.get(s).entry);
+                }
+                first = false;
+                remove(s);
+            }
+        } else if (statement instanceof Select) {
+            for (Statement s : ((Select) statement).getStatements()) {
+                remove(s);
+            }
+        } else {
+            Statement s = ((Repeat) statement).getStatement();
+            ControlFlowNode enterBody = regions.get(s).entry;
+            ControlFlowNode exitBody = regions.get(s).exit;
+            removed.add(enterBody);
+            removed.add(exitBody);
+            adjacency.removeEdge(region.entry, region.exit, region.nulls[0]);
+            adjacency.removeEdge(region.entry, enterBody, region.nulls[1]);
+            adjacency.removeEdge(exitBody, region.exit, region.nulls[2]);
+            adjacency.removeEdge(exitBody, enterBody, region.nulls[3]);
+            remove(s);
+        }
+    }
+
+    /** Move the edges leaving the entry of a statement to a new entry */
+    private void moveEntry(Statement statement, ControlFlowNode entry) {
+        Region region = regions.get(statement);
+        ControlFlowNode from = region.entry;
+        region.entry = entry;
+        if (statement instanceof Primitive) {
+            move((Primitive) statement, from, region.exit, entry, region.exit);
+        } else if (statement instanceof Compound) {
+            moveEntry(((Compound) statement).getStatements().get(0), entry);
+        } else if (statement instanceof Select) {
+            for (Statement s : ((Select) statement).getStatements()) {
+                moveEntry(s, entry);
+            }
+        } else {
+            ControlFlowNode enterBody =
+                regions.get(((Repeat) statement).getStatement()).entry;
+            move(region.nulls[0], from, region.exit, entry, region.exit);
+            move(region.nulls[1], from, enterBody, entry, enterBody);
+        }
+    }
+
+    /** Move the edges entering the exit of a statement to a new exit */
+    private void moveExit(Statement statement, ControlFlowNode exit) {
+        Region region = regions.get(statement);
+        ControlFlowNode from = region.exit;
+        region.exit = exit;
+        if (statement instanceof Primitive) {
+            move((Primitive) statement, region.entry, from, region.entry, exit);
+        } else if (statement instanceof Compound) {
+            List<Statement> statements = ((Compound) statement).getStatements();
+            moveExit(statements.get(statements.size() - 1), exit);
+        } else if (statement instanceof Select) {
+            for (Statement s : ((Select) statement).getStatements()) {
+                moveExit(s, exit);
+            }
+        } else {
+            ControlFlowNode exitBody =
+                regions.get(((Repeat) statement).getStatement()).exit;
+            move(region.nulls[0], region.entry, from, region.entry, exit);
+            move(region.nulls[2], exitBody, from, exitBody, exit);
+        }
+    }
+
+    /** Move an edge of the flow graph */
+    private void move(Primitive label, ControlFlowNode fromSource,
+            ControlFlowNode fromTarget, ControlFlowNode toSource,
+            ControlFlowNode toTarget) {
+        adjacency.removeEdge(fromSource, fromTarget, label);
+        adjacency.addEdge(toSource, toTarget, label);
+    }
+
+    /** @return a new node of the flow graph */
+    private ControlFlowNode newNode() {
+        ControlFlowNode node = new ControlFlowNode();
+        adjacency.addVertex(node);
+        grow();
+        return node;
+    }
+
+    /** Make room in the arrays indexed by node for all the nodes */
+    private void grow() {
+        if (depends.length < adjacency.size()) {
+            int size = Math.max(adjacency.size(), 2 * depends.length);
+            depends = Arrays.copyOf(depends, size);
+            ranks = Arrays.copyOf(ranks, size);
+            owners = Arrays.copyOf(owners, size);
+        }
+    }
+
+    /** Remove a node without edges from the graph. The last node takes
+     * its index. */
+    private void free(ControlFlowNode node) {
+        int hole = adjacency.index(node);
+        int last = adjacency.size() - 1;
+        adjacency.removeVertex(node);
+        depends[hole] = depends[last];
+        ranks[hole] = ranks[last];
+        owners[hole] = owners[last];
+        depends[last] = null;
+        owners[last] = null;
+    }
+
+    /** @return the rank of a node */
+    private long rank(ControlFlowNode node) {
+        return ranks[adjacency.index(node)];
+    }
+
+    /**
+     * @return the nodes added since the graph had first nodes that are
+     *         reached from entry through them, in reverse postorder
+     */
+    private List<ControlFlowNode> newNodes(ControlFlowNode entry, int first) {
+        List<ControlFlowNode> nodes = new ArrayList<ControlFlowNode>();
+        // Depth-first search with an explicit stack of nodes and the
+        // number of their edges already followed
+        int[] stack = new int[2 * (adjacency.size() - first + 1)];
+        int sp = 0;
+        stack[sp++] = adjacency.index(entry);
+        stack[sp++] = 0;
+        boolean[] seen = new boolean[adjacency.size() - first];
+        while (sp > 0) {
+            int v = stack[sp - 2];
+            int i = stack[sp - 1];
+            if (i < adjacency.degree(v)) {
+                stack[sp - 1] = i + 1;
+                int w = adjacency.target(v, i);
+                if (w >= first && !seen[w - first]) {
+                    seen[w - first] = true;
+                    stack[sp++] = w;
+                    stack[sp++] = 0;
+                }
+            } else {
+                sp -= 2;
+                if (v >= first) {
+                    nodes.add(adjacency.vertex(v));
+                }
+            }
+        }
+        Collections.reverse(nodes);
+        return nodes;
+    }
+
+    /** Rank nodes, in the order given, between two nodes, renumbering all
+     * the nodes if there is no room between them */
+    private void place(List<ControlFlowNode> nodes, ControlFlowNode after,
+            ControlFlowNode before) {
+        if (rank(before) - rank(after) <= nodes.size()) {
+            renumber(nodes);
+        }
+        long step = (rank(before) - rank(after)) / (nodes.size() + 1);
+        long next = rank(after);
+        for (ControlFlowNode node : nodes) {
+            next += step;
+            ranks[adjacency.index(node)] = next;
+        }
+    }
+
+    /** Spread out the ranks of all the nodes but those given */
+    private void renumber(List<ControlFlowNode> unranked) {
+        Set<ControlFlowNode> skip = nodeSet();
+        skip.addAll(unranked);
+        List<ControlFlowNode> nodes = new ArrayList<ControlFlowNode>();
+        for (ControlFlowNode node : adjacency) {
+            if (!skip.contains(node)) {
+                nodes.add(node);
+            }
+        }
+        Collections.sort(nodes, byRank);
+        for (int i = 0; i < nodes.size(); i++) {
+            ranks[adjacency.index(nodes.get(i))] = (long) (i + 1) << SPACING;
+        }
+    }
+
+    /** @return the successor of a node of least rank */
+    private ControlFlowNode firstSuccessor(ControlFlowNode node) {
+        int v = adjacency.index(node);
+        ControlFlowNode result = adjacency.vertex(adjacency.target(v, 0));
+        for (int i = 1; i < adjacency.degree(v); i++) {
+            ControlFlowNode w = adjacency.vertex(adjacency.target(v, i));
+            if (rank(w) < rank(result)) {
+                result = w;
+            }
+        }
+        return result;
+    }
+
+    /** @return the predecessor of a node of greatest rank */
+    private ControlFlowNode lastPredecessor(ControlFlowNode node) {
+        ControlFlowNode result = null;
+        for (AdjacentEdge<ControlFlowNode, Primitive> edge :
+                adjacency.incoming(node)) {
+            if (result == null || rank(edge.target) > rank(result)) {
+                result = edge.target;
+            }
+        }
+        return result;
+    }
+
+    /** @return the region of a statement of the program */
+    private Region region(Statement statement) {
+        Region region = regions.get(statement);
+        if (region == null) {
+            throw new IllegalArgumentException(statement +
+                    " is not a statement of the program");
+        }
+        return region;
+    }
+
+    /** @return an empty set of nodes compared by identity */
+    private static Set<ControlFlowNode> nodeSet() {
+        return Collections.newSetFromMap(
+                new IdentityHashMap<ControlFlowNode, Boolean>());
+    }
+
+    /**
+     * @return the nodes of the strongly connected component of a node: the
+     *         nodes inside the outermost repeat statement around it, or just
+     *         the node if it is not on a loop
+     */
+    private List<ControlFlowNode> component(ControlFlowNode node) {
+        Repeat loop = null;
+        for (Statement s = owners[adjacency.index(node)]; s != null;
+                s = regions.get(s).parent) {
+            if (s instanceof Repeat) {
+                loop = (Repeat) s;
+            }
+        }
+        List<ControlFlowNode> nodes = new ArrayList<ControlFlowNode>();
+        if (loop == null) {
+            nodes.add(node);
+        } else {
+            addNodes(loop, nodes);
+        }
+        return nodes;
+    }
+
+    /** Add the nodes inside a statement to a list */
+    private void addNodes(Statement statement, List<ControlFlowNode> nodes) {
+        if (statement instanceof Compound) {
+            boolean first = true;
+            for (Statement s : ((Compound) statement).getStatements()) {
+                if (!first) {
+                    nodes.add(regions.get(s).entry);
+                }
+                first = false;
+                addNodes(s, nodes);
+            }
+        } else if (statement instanceof Select) {
+            for (Statement s : ((Select) statement).getStatements()) {
+                addNodes(s, nodes);
+            }
+        } else if (statement instanceof Repeat) {
+            Statement s = ((Repeat) statement).getStatement();
+            nodes.add(regions.get(s).entry);
+            nodes.add(regions.get(s).exit);
+            addNodes(s, nodes);
+        }
+    }
+
+    /** Recalculate the dependencies of the nodes affected by the changes
+     * since the last recalculation, a component at a time in order of
+     * rank */
+    private Dependencies recalculate() {
+        Set<ControlFlowNode> gone = nodeSet();
+        gone.addAll(removed);
+        for (ControlFlowNode node : removed) {
+            free(node);
+        }
+        removed.clear();
+        flowGraph.resetCounts();
+        Queue pending = new Queue();
+        for (ControlFlowNode node : changed) {
+            if (!gone.contains(node)) {
+                pending.add(node);
+            }
+        }
+        changed.clear();
+        while (!pending.isEmpty()) {
+            solve(component(pending.remove()), pending);
+        }
+        dependencies = flowGraph.exit.getDepends();
+        program.edited(body, dependencies);
+        return dependencies;
+    }
+
+    /**
+     * Recalculate a strongly connected component from nothing, with a
+     * worklist in order of rank, and add the nodes after it to pending if
+     * the dependencies of the nodes before them change
+     */
+    private void solve(List<ControlFlowNode> component, Queue pending) {
+        int start = adjacency.index(flowGraph.entry);
+        Set<ControlFlowNode> members = nodeSet();
+        members.addAll(component);
+        Dependencies[] previous = new Dependencies[component.size()];
+        Queue worklist = new Queue();
+        for (int i = 0; i < component.size(); i++) {
+            ControlFlowNode node = component.get(i);
+            int v = adjacency.index(node);
+            previous[i] = depends[v];
+            depends[v] = null;
+            pending.discard(node);
+            worklist.add(node);
+        }
+        while (!worklist.isEmpty()) {
+            int v = adjacency.index(worklist.remove());
+            if (flowGraph.update(v, start, entryDependencies, depends)) {
+                for (int i = 0; i < adjacency.degree(v); i++) {
+                    ControlFlowNode w = adjacency.vertex(adjacency.target(v, i));
+                    if (members.contains(w)) {
+                        worklist.add(w);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < component.size(); i++) {
+            ControlFlowNode node = component.get(i);
+            int v = adjacency.index(node);
+            if (previous[i] == null ? depends[v] == null
+                    : depends[v] != null && depends[v].equals(previous[i])) {
+                continue;
+            }
+            node.setDepends(depends[v] == null ? new Dependencies()
+                    : depends[v]);
+            for (int j = 0; j < adjacency.degree(v); j++) {
+                ControlFlowNode w = adjacency.vertex(adjacency.target(v, j));
+                if (!members.contains(w)) {
+                    pending.add(w);
+                }
+            }
+        }
+    }
+}
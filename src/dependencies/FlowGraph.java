@@ -1,28 +1,162 @@
 package dependencies;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import dependencies.Primitive.NullStatement;
 import dependencies.Statement.Compound;
 import dependencies.Statement.Repeat;
 import dependencies.Statement.Select;
+import graphs.Graph.AdjacentEdge;
 import graphs.DGraph;
 import graphs.DGraphAdj;
-import graphs.Graph.AdjacentEdge;
+import graphs.EdgeSet;
+import graphs.Renumbering;
+import graphs.StronglyConnectedComponents;
+import graphs.Traversals;
 
 public class FlowGraph {
+    /** Methods of solving the dependency equations */
+    public enum Solver {
+        /**
+         * Worklist solver: each node's dependencies are the merge over its
+         * incoming edges, found by propagating the changes to each node
+         * in reverse postorder until nothing changes
+         */
+        WORKLIST,
+        /**
+         * As for the worklist solver, but solving one strongly connected
+         * component at a time in topological order, so that nodes outside
+         * loops are calculated once and each loop is iterated only until
+         * its own nodes settle
+         */
+        COMPONENTS,
+        /**
+         * The original solver, which revisits a node recursively whenever
+         * its dependencies change
+         */
+        RECURSIVE
+    }
+
     /** Control flow graph for a function */
     DGraph<ControlFlowNode, Primitive> graph;
     /** Unique entry and exit nodes for the control flow graph */
     ControlFlowNode entry, exit;
+    /** Method used by calculateDependencies */
+    private Solver solver = Solver.WORKLIST;
+    /** Number of node visits made by the last calculateDependencies */
+    private long iterations;
+    /** Number of statements evaluated by the last calculateDependencies */
+    private long evaluations;
+    /** Pairs of nodes joined by a null statement edge, while the graph is
+     * being built from a statement; otherwise null */
+    private EdgeSet nullEdges;
 
-    /** Construct a new control flow graph for a function */
+    /**
+     * Construct a new control flow graph for a function. The graph is
+     * built in one sequential pass: building it takes a small part of the
+     * analysis, and splitting it between threads needs a sizing pass and
+     * a merge that together cost about as much as the whole build.
+     */
     public FlowGraph(Statement body) {
         super();
         graph = new DGraphAdj<ControlFlowNode, Primitive>();
+        nullEdges = new EdgeSet();
         entry = newVertex();
         exit = newVertex();
         body.buildGraph(entry, exit, this);
+        nullEdges = null;
+    }
+
+    /**
+     * Replace the graph by an immutable compressed sparse row copy once it
+     * has been built, so that the analysis walks contiguous arrays.
+     */
+    public void freeze() {
+        if (graph instanceof DGraphAdj) {
+            graph = ((DGraphAdj<ControlFlowNode, Primitive>) graph).freeze();
+        }
+    }
+
+    /**
+     * Construct a control flow graph from an existing graph, such as one
+     * read back by FlowGraphIO
+     */
+    FlowGraph(DGraph<ControlFlowNode, Primitive> graph, 
+            ControlFlowNode entry, ControlFlowNode exit) {
+        super();
+        this.graph = graph;
+        this.entry = entry;
+        this.exit = exit;
+    }
+
+    /**
+     * Renumber the vertices of the graph so that vertices close together in
+     * the control flow are close together in memory. This replaces the
+     * graph by a renumbered immutable copy.
+     * 
+     * @param order
+     *            in which to number the vertices
+     */
+    public void renumber(Renumbering.Order order) {
+        graph = Renumbering.permute(graph, Renumbering.renumbering(graph,
+                graph.index(entry), order));
+    }
+
+    /** @return the mean distance between the indices of the nodes joined
+     *  by an edge of the graph */
+    public double meanEdgeSpan() {
+        return Renumbering.meanEdgeSpan(graph);
+    }
+
+    /**
+     * Coalesce each maximal straight-line chain of edges into a single edge
+     * labelled with a Block of the chain's statements. A chain passes
+     * through nodes other than the entry and exit with exactly one edge in
+     * and one edge out; those nodes are removed. The graph is replaced by
+     * an immutable copy of the coalesced graph with new nodes, including
+     * new entry and exit nodes. Nodes on cycles of such nodes are not
+     * reachable from the entry and are dropped.
+     */
+    public void coalesce() {
+        int n = graph.size();
+        boolean[] inner = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            ControlFlowNode node = graph.vertex(v);
+            inner[v] = node != entry && node != exit
+                    && graph.inDegree(node) == 1 && graph.degree(v) == 1;
+        }
+        DGraphAdj<ControlFlowNode, Primitive> coalesced =
+            new DGraphAdj<ControlFlowNode, Primitive>();
+        ControlFlowNode[] copy = new ControlFlowNode[n];
+        for (int v = 0; v < n; v++) {
+            if (!inner[v]) {
+                copy[v] = new ControlFlowNode();
+                coalesced.addVertex(copy[v]);
+            }
+        }
+        for (int u = 0; u < n; u++) {
+            if (inner[u]) {
+                continue;
+            }
+            for (int i = 0; i < graph.degree(u); i++) {
+                Primitive statement = graph.label(u, i);
+                int w = graph.target(u, i);
+                if (inner[w]) {
+                    List<Primitive> chain = new ArrayList<Primitive>();
+                    chain.add(statement);
+                    while (inner[w]) {
+                        chain.add(graph.label(w, 0));
+                        w = graph.target(w, 0);
+                    }
+                    statement = new Primitive.Block(chain);
+                }
+                coalesced.addEdge(copy[u], copy[w], statement);
+            }
+        }
+        entry = copy[graph.index(entry)];
+        exit = copy[graph.index(exit)];
+        graph = coalesced.freeze();
     }
 
     /** Construct a new vertex and add to graph */
@@ -34,7 +168,10 @@ public class FlowGraph {
 
     /**
      * To construct the control flow graph for a primitive, one only needs to
-     * add an edge labelled with the primitive statement
+     * add an edge labelled with the primitive statement. A null statement
+     * is left out if there is already a null statement edge between the
+     * same nodes, as for a select between repeats or a null branch, as it
+     * would add nothing to the dependencies.
      * 
      * @param entry
      *            vertex already in graph
@@ -45,14 +182,286 @@ public class FlowGraph {
      */
     public void buildPrimitive(ControlFlowNode entry, ControlFlowNode exit,
             Primitive statement) {
+        if (statement instanceof NullStatement && nullEdges != null
+                && !nullEdges.add(graph.index(entry), graph.index(exit))) {
+            return;
+        }
         graph.addEdge(entry, exit, statement);
     }
 
+    /** Set the method used to calculate the dependencies */
+    public void setSolver(Solver solver) {
+        this.solver = solver;
+    }
+
+    /** @return the method used to calculate the dependencies */
+    public Solver getSolver() {
+        return solver;
+    }
+
+    /**
+     * @return the number of node visits made by the last calculation of the
+     *         dependencies
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of statements evaluated by the last calculation of
+     *         the dependencies
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /** Reset the numbers of iterations and evaluations */
+    void resetCounts() {
+        iterations = 0;
+        evaluations = 0;
+    }
+
     /** Calculate the dependencies for this graph */
     public Dependencies calculateDependencies(Dependencies entryDependencies) {
-        Dependencies exitDependencies = entryDependencies.copy();
-        entry.setDepends(exitDependencies);
-        depthFirstSearch();
+        iterations = 0;
+        evaluations = 0;
+        if (solver == Solver.RECURSIVE) {
+            Dependencies exitDependencies = entryDependencies.copy();
+            entry.setDepends(exitDependencies);
+            depthFirstSearch();
+            return exit.getDepends();
+        }
+        if (solver == Solver.COMPONENTS) {
+            return solveComponents(entryDependencies);
+        }
+        return solveWorklist(entryDependencies);
+    }
+
+    /**
+     * Calculate the dependencies with a worklist, propagating only what has
+     * changed. Each node has pending changes: the dependencies added to it
+     * since it was last taken from the worklist. Taking a node applies the
+     * statement of each edge leaving it to its changes alone and merges
+     * the result into the target, whose own changes are what that merge
+     * adds. This gives the same dependencies as recalculating each node in
+     * full, as every statement distributes over merging, while the work
+     * and the comparisons are proportional to the changes. Nodes are taken
+     * in reverse postorder, so that each loop is iterated inner first
+     * until nothing changes. A node is taken at least once when it is
+     * first reached, so that the variables assigned on the way to it have
+     * dependencies even when they are empty.
+     * 
+     * @return the dependencies at the exit
+     */
+    private Dependencies solveWorklist(Dependencies entryDependencies) {
+        int start = graph.index(entry);
+        // Dependencies of each node, null until it is first reached
+        Dependencies[] depends = new Dependencies[graph.size()];
+        // Changes to each node not yet propagated to its successors
+        Dependencies[] changes = new Dependencies[graph.size()];
+        Worklist worklist = new Worklist(priorities(start));
+        depends[start] = entryDependencies.copy();
+        changes[start] = entryDependencies.copy();
+        worklist.add(start);
+        while (!worklist.isEmpty()) {
+            int v = worklist.remove();
+            iterations++;
+            Dependencies changed = changes[v];
+            changes[v] = null;
+            for (int i = 0; i < graph.degree(v); i++) {
+                int w = graph.target(v, i);
+                evaluations++;
+                Dependencies after = graph.label(v, i)
+                        .calculateDependencies(changed);
+                Dependencies added;
+                if (depends[w] == null) {
+                    depends[w] = after;
+                    added = after.copy();
+                } else {
+                    added = depends[w].mergeChanges(after);
+                    if (added == null) {
+                        continue;
+                    }
+                }
+                changes[w] = changes[w] == null ? added
+                        : changes[w].merge(added);
+                worklist.add(w);
+            }
+        }
+        return install(depends);
+    }
+
+    /**
+     * Calculate the dependencies a strongly connected component at a time.
+     * The components are taken in topological order, so that when a
+     * component is reached the dependencies of all the nodes before it are
+     * final. A component without a cycle is calculated once; a cycle is
+     * iterated with a worklist restricted to its component, in reverse
+     * postorder, until nothing changes, and is never visited again.
+     * 
+     * @return the dependencies at the exit
+     */
+    private Dependencies solveComponents(Dependencies entryDependencies) {
+        int start = graph.index(entry);
+        StronglyConnectedComponents components =
+            new StronglyConnectedComponents(graph);
+        Dependencies[] depends = new Dependencies[graph.size()];
+        Worklist worklist = new Worklist(priorities(start));
+        for (int c = 0; c < components.count(); c++) {
+            if (!components.isCyclic(c)) {
+                update(components.member(c, 0), start, entryDependencies,
+                        depends);
+                continue;
+            }
+            for (int i = 0; i < components.size(c); i++) {
+                worklist.add(components.member(c, i));
+            }
+            while (!worklist.isEmpty()) {
+                int v = worklist.remove();
+                if (update(v, start, entryDependencies, depends)) {
+                    for (int i = 0; i < graph.degree(v); i++) {
+                        int w = graph.target(v, i);
+                        if (components.component(w) == c) {
+                            worklist.add(w);
+                        }
+                    }
+                }
+            }
+        }
+        return install(depends);
+    }
+
+    /**
+     * Calculate the dependencies of a single variable at the exit by
+     * working backwards from the exit on demand. A pair (node, x) is
+     * visited if the value of x at the exit may depend on the value of x
+     * at the node. Crossing an edge backwards, x is replaced by the
+     * variables of the expression if the statement assigns x, and is kept
+     * otherwise; the pairs reached at the entry give the dependencies. Only
+     * the assignments that can influence the variable are examined.
+     * 
+     * @param variable
+     *            whose dependencies at the exit are wanted
+     * @return the dependencies of the variable at the exit
+     * @throws IllegalArgumentException
+     *             if the variable is not one of the program's
+     */
+    DependSet query(Dependencies entryDependencies, String variable,
+            SymbolTable symbols) {
+        int start = graph.index(entry);
+        DependSet result = new DependSet(symbols);
+        // Variables visited at each node, allocated when first reached
+        DependSet[] visited = new DependSet[graph.size()];
+        List<int[]> pending = new ArrayList<int[]>();
+        int id = symbols.lookup(variable);
+        if (id < 0) {
+            throw new IllegalArgumentException("No variable " + variable
+                    + " in the program");
+        }
+        demand(graph.index(exit), id, visited, pending, symbols);
+        while (!pending.isEmpty()) {
+            int[] pair = pending.remove(pending.size() - 1);
+            int v = pair[0];
+            String x = symbols.name(pair[1]);
+            if (v == start) {
+                DependSet in = entryDependencies.get(x);
+                if (in != null) {
+                    result.addAll(in);
+                }
+            }
+            for (AdjacentEdge<ControlFlowNode, Primitive> edge : graph
+                    .incoming(graph.vertex(v))) {
+                evaluations++;
+                int u = graph.index(edge.target);
+                DependSet sources = edge.edgeInfo.sources(x);
+                if (sources == null) {
+                    demand(u, pair[1], visited, pending, symbols);
+                    continue;
+                }
+                for (int y = sources.next(0); y >= 0;
+                        y = sources.next(y + 1)) {
+                    demand(u, y, visited, pending, symbols);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Visit the pair (v, x) unless it has been visited already */
+    private void demand(int v, int x, DependSet[] visited,
+            List<int[]> pending, SymbolTable symbols) {
+        if (visited[v] == null) {
+            visited[v] = new DependSet(symbols);
+        }
+        if (!visited[v].contains(x)) {
+            iterations++;
+            visited[v].add(x);
+            pending.add(new int[] { v, x });
+        }
+    }
+
+    /**
+     * @return the priority of each node for the worklist: its reverse
+     *         postorder number, with nodes not reached from the entry last
+     */
+    private int[] priorities(int start) {
+        int[] order = Traversals.reversePostorder(graph, start);
+        int next = 0;
+        for (int k : order) {
+            if (k >= 0) {
+                next++;
+            }
+        }
+        for (int v = 0; v < order.length; v++) {
+            if (order[v] < 0) {
+                order[v] = next++;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Recalculate the dependencies of node v as the merge over the edges
+     * entering it of the dependencies after the statement labelling the
+     * edge; those of the entry also include the entry dependencies. Edges
+     * from nodes not yet reached are ignored.
+     * 
+     * @param depends
+     *            dependencies of each node, null for nodes not yet reached
+     * @return true if and only if the dependencies of v changed
+     */
+    boolean update(int v, int start, Dependencies entryDependencies,
+            Dependencies[] depends) {
+        iterations++;
+        Dependencies in = v == start ? entryDependencies.copy() : null;
+        for (AdjacentEdge<ControlFlowNode, Primitive> edge : graph
+                .incoming(graph.vertex(v))) {
+            Dependencies before = depends[graph.index(edge.target)];
+            if (before != null) {
+                evaluations++;
+                Dependencies after = edge.edgeInfo
+                        .calculateDependencies(before);
+                in = in == null ? after : in.merge(after);
+            }
+        }
+        if (in == null || (depends[v] != null && in.equals(depends[v]))) {
+            return false;
+        }
+        depends[v] = in;
+        return true;
+    }
+
+    /**
+     * Set the dependencies of every node, with empty dependencies for nodes
+     * not reached from the entry
+     * 
+     * @return the dependencies at the exit
+     */
+    private Dependencies install(Dependencies[] depends) {
+        for (int v = 0; v < depends.length; v++) {
+            graph.vertex(v).setDepends(
+                    depends[v] == null ? new Dependencies() : depends[v]);
+        }
         return exit.getDepends();
     }
 
@@ -75,49 +484,111 @@ public class FlowGraph {
      */
     private void visit(ControlFlowNode u) {
 
+        iterations++;
         int links = 0; // Count the number of edges from each Vertex
+        int source = graph.index(u);
 
-        for (AdjacentEdge<ControlFlowNode, Primitive> e : graph.adjacent(u)) {
-            if (!(e.edgeInfo instanceof Primitive.NullStatement))
+        for (int i = 0; i < graph.degree(source); i++) {
+            Primitive statement = graph.label(source, i);
+            if (!(statement instanceof Primitive.NullStatement))
                 links++;
 
-            ControlFlowNode v = e.target; // Target Vertex
+            ControlFlowNode v = graph.vertex(graph.target(source, i));
             Dependencies depsIn = v.getDepends(); // Dependencies of Origin
             Dependencies depsTarget; // Dependencies of Target
 
+            evaluations++;
             if (links > 1) {
                 /*
                  * If more than 1 non Null statement extends from a Vertex
                  * dependencies at target dependencies need to be merged
                  * (support for select statements)
                  */
-                depsTarget = e.edgeInfo.calculateDependencies(v.getDepends());
+                depsTarget = statement.calculateDependencies(v.getDepends());
                 depsTarget = depsIn.merge(depsTarget);
             } else {
-                depsTarget = e.edgeInfo.calculateDependencies(u.getDepends());
+                depsTarget = statement.calculateDependencies(u.getDepends());
             }
 
             v.setDepends(depsTarget); // Update Target Dependencies
 
             // Visit Target if dependencies differ
             if (!depsTarget.equals(depsIn)) {
-                visit(e.target);
+                visit(v);
             }
 
         }
     }
 
+    /**
+     * Compare with another flow graph, such as a copy read back by
+     * FlowGraphIO: the graphs are the same if their nodes are numbered
+     * alike and each node has the same edges, in the same order, to the
+     * same targets, labelled with statements of the same kind, at the same
+     * positions and with the same variables.
+     *
+     * @param other
+     *            flow graph to compare with
+     * @return whether the graphs are the same
+     */
+    public boolean sameAs(FlowGraph other) {
+        if (graph.size() != other.graph.size()
+                || graph.index(entry) != other.graph.index(other.entry)
+                || graph.index(exit) != other.graph.index(other.exit)) {
+            return false;
+        }
+        for (int n = 0; n < graph.size(); n++) {
+            if (graph.degree(n) != other.graph.degree(n)) {
+                return false;
+            }
+            for (int i = 0; i < graph.degree(n); i++) {
+                if (graph.target(n, i) != other.graph.target(n, i)
+                        || !sameStatement(graph.label(n, i),
+                                other.graph.label(n, i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** @return whether two primitive statements, and the statements of
+     *  two blocks, are of the same kind at the same position with the
+     *  same variables */
+    private static boolean sameStatement(Primitive s, Primitive t) {
+        if (s.getClass() != t.getClass()
+                || s.pos.getIndex() != t.pos.getIndex()) {
+            return false;
+        }
+        if (s instanceof Primitive.Block) {
+            List<Primitive> ss = ((Primitive.Block) s).getStatements();
+            List<Primitive> ts = ((Primitive.Block) t).getStatements();
+            if (ss.size() != ts.size()) {
+                return false;
+            }
+            for (int i = 0; i < ss.size(); i++) {
+                if (!sameStatement(ss.get(i), ts.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return s.toString().equals(t.toString());
+    }
+
     public String toString() {
-        String result = "Entry = " + entry + " Exit = " + exit + "\n";
+        StringBuilder result = new StringBuilder();
+        result.append("Entry = ").append(entry)
+            .append(" Exit = ").append(exit).append("\n");
         // As the graph is connected we just print the edges
-        for (ControlFlowNode n : graph) {
-            for( AdjacentEdge<ControlFlowNode,Primitive> 
-                    e : graph.adjacent(n) ) {
-                result += "  " + n + " -> " + e.target + " " +
-                e.edgeInfo + " " + "\n";
+        for (int n = 0; n < graph.size(); n++) {
+            for (int i = 0; i < graph.degree(n); i++) {
+                result.append("  ").append(graph.vertex(n)).append(" -> ")
+                    .append(graph.vertex(graph.target(n, i))).append(" ")
+                    .append(graph.label(n, i)).append(" \n");
             }
         }
-        return result;
+        return result.toString();
     }
 
     /**
@@ -0,0 +1,207 @@
+package dependencies;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import graphs.DGraphAdj;
+import graphs.GraphIO;
+import source.Position;
+
+/** Binary format for control flow graphs, so that a built graph can be
+ * cached and reloaded without parsing the source program again.
+ * A flow graph is written as
+ * <pre>
+ *   magic version entry exit graph
+ * </pre>
+ * where graph is in the format of GraphIO, whose label table holds the
+ * primitive statements. Each statement is written as a kind, its source
+ * position and, for an assignment, its variable and expression variables
+ * or, for a block, its statements.
+ * Variable names are interned: the first occurrence of a name is written
+ * as 0 followed by the name, and later occurrences as i+1 for the i-th
+ * distinct name.
+ */
+public class FlowGraphIO {
+
+    /** Identifies the start of a flow graph: "FLOW" */
+    private static final int MAGIC = 0x464c4f57;
+    /** Current version of the format */
+    public static final int VERSION = 2;
+
+    /** Kinds of primitive statement */
+    private static final int NULL = 0, ASSIGNMENT = 1, ERROR = 2, BLOCK = 3;
+
+    /** Write a flow graph
+     * @param out stream to write to, which is flushed but not closed
+     * @param flowGraph to be written
+     */
+    public static void write( OutputStream out, FlowGraph flowGraph )
+            throws IOException {
+        DataOutputStream data = new DataOutputStream( 
+                new BufferedOutputStream( out ) );
+        data.writeInt( MAGIC );
+        GraphIO.writeVarint( data, VERSION );
+        GraphIO.writeVarint( data, flowGraph.graph.index( flowGraph.entry ) );
+        GraphIO.writeVarint( data, flowGraph.graph.index( flowGraph.exit ) );
+        GraphIO.write( data, flowGraph.graph, new PrimitiveCodec( null ) );
+        data.flush();
+    }
+    /** Read a flow graph
+     * @param in stream to read from
+     * @return the flow graph read, with empty dependencies at every node,
+     *  frozen as is the graph of a built Program
+     * @throws IOException if the input is not a flow graph in a supported
+     *  version of the format
+     */
+    public static FlowGraph read( InputStream in ) throws IOException {
+        return read( in, new SymbolTable() );
+    }
+    /** Read a flow graph
+     * @param in stream to read from
+     * @param symbols symbol table to which the variables are added
+     * @return the flow graph read, with empty dependencies at every node,
+     *  frozen as is the graph of a built Program
+     * @throws IOException if the input is not a flow graph in a supported
+     *  version of the format
+     */
+    public static FlowGraph read( InputStream in, SymbolTable symbols ) 
+            throws IOException {
+        DataInputStream data = new DataInputStream( 
+                new BufferedInputStream( in ) );
+        if( data.readInt() != MAGIC ) {
+            throw new IOException( "Not a flow graph file" );
+        }
+        int version = GraphIO.readVarint( data );
+        // Version 2 added blocks; version 1 files are still readable
+        if( version < 1 || version > VERSION ) {
+            throw new IOException( 
+                    "Unsupported flow graph format version " + version );
+        }
+        int entry = GraphIO.readVarint( data );
+        int exit = GraphIO.readVarint( data );
+        DGraphAdj<ControlFlowNode, Primitive> graph = GraphIO.read( data,
+                new GraphIO.VertexFactory<ControlFlowNode>() {
+                    public ControlFlowNode newVertex() {
+                        return new ControlFlowNode();
+                    }
+                }, new PrimitiveCodec( symbols ) );
+        if( entry >= graph.size() || exit >= graph.size() ) {
+            throw new IOException( "Corrupt flow graph file" );
+        }
+        FlowGraph flowGraph = new FlowGraph( graph, graph.vertex( entry ), 
+                graph.vertex( exit ) );
+        flowGraph.freeze();
+        return flowGraph;
+    }
+
+    /** Codec for the primitive statements labelling the edges, which
+     * interns variable names. A new codec is used for each graph. */
+    private static class PrimitiveCodec 
+            implements GraphIO.LabelCodec<Primitive> {
+        /** Identifiers of the names written so far */
+        private Map<String, Integer> ids = new HashMap<String, Integer>();
+        /** Names read so far, indexed by identifier */
+        private List<String> names = new ArrayList<String>();
+        /** Symbol table for the variables read */
+        private SymbolTable symbols;
+
+        PrimitiveCodec( SymbolTable symbols ) {
+            this.symbols = symbols;
+        }
+
+        public void write( DataOutput out, Primitive statement ) 
+                throws IOException {
+            if( statement instanceof Primitive.Assignment ) {
+                Primitive.Assignment assignment = 
+                    (Primitive.Assignment)statement;
+                GraphIO.writeVarint( out, ASSIGNMENT );
+                GraphIO.writeVarint( out, statement.pos.getIndex() );
+                writeName( out, assignment.variable );
+                SortedSet<String> vars = 
+                    assignment.expression.getDependencies();
+                GraphIO.writeVarint( out, vars.size() );
+                for( String var : vars ) {
+                    writeName( out, var );
+                }
+            } else if( statement instanceof Primitive.Block ) {
+                List<Primitive> statements = 
+                    ((Primitive.Block)statement).getStatements();
+                GraphIO.writeVarint( out, BLOCK );
+                GraphIO.writeVarint( out, statement.pos.getIndex() );
+                GraphIO.writeVarint( out, statements.size() );
+                for( Primitive inner : statements ) {
+                    write( out, inner );
+                }
+            } else {
+                GraphIO.writeVarint( out, 
+                    statement instanceof Primitive.ErrorStatement ? 
+                            ERROR : NULL );
+                GraphIO.writeVarint( out, statement.pos.getIndex() );
+            }
+        }
+        public Primitive read( DataInput in ) throws IOException {
+            int kind = GraphIO.readVarint( in );
+            Position pos = new Position( GraphIO.readVarint( in ) );
+            switch( kind ) {
+            case NULL:
+                return new Primitive.NullStatement( pos );
+            case ERROR:
+                return new Primitive.ErrorStatement( pos );
+            case ASSIGNMENT:
+                String variable = readName( in );
+                DependSet vars = new DependSet( symbols );
+                for( int count = GraphIO.readVarint( in ); count > 0; 
+                        count-- ) {
+                    vars.add( readName( in ) );
+                }
+                return new Primitive.Assignment( pos, variable, vars );
+            case BLOCK:
+                int count = GraphIO.readVarint( in );
+                if( count == 0 ) {
+                    throw new IOException( "Corrupt flow graph file" );
+                }
+                List<Primitive> statements = new ArrayList<Primitive>();
+                for( ; count > 0; count-- ) {
+                    statements.add( read( in ) );
+                }
+                return new Primitive.Block( statements );
+            default:
+                throw new IOException( "Unknown statement kind " + kind );
+            }
+        }
+        private void writeName( DataOutput out, String name ) 
+                throws IOException {
+            Integer id = ids.get( name );
+            if( id == null ) {
+                ids.put( name, ids.size() );
+                GraphIO.writeVarint( out, 0 );
+                out.writeUTF( name );
+            } else {
+                GraphIO.writeVarint( out, id + 1 );
+            }
+        }
+        private String readName( DataInput in ) throws IOException {
+            int id = GraphIO.readVarint( in );
+            if( id == 0 ) {
+                String name = in.readUTF().intern();
+                names.add( name );
+                return name;
+            } else if( id <= names.size() ) {
+                return names.get( id - 1 );
+            }
+            throw new IOException( "Corrupt flow graph file" );
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package dependencies;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Structural analysis that summarises each distinct statement once. The
+ * body is first interned in a StatementTable, so that repeated statements,
+ * such as identical repeat bodies or select branches, become one shared
+ * instance, and the summary of each instance is kept and reused wherever
+ * it occurs. The shared instances are copies held by the table, so the
+ * program analysed is not changed and may still be edited. Summaries are
+ * never changed once calculated, so they may be shared.
+ */
+public class MemoStructuralAnalysis extends StructuralAnalysis {
+
+    /** Canonical instances of the statements analysed */
+    private final StatementTable table;
+    /** Summary of each canonical statement */
+    private final Map<Statement, Summary> memo;
+    /** Number of summaries asked for */
+    private long lookups;
+    /** Number of summaries reused */
+    private long hits;
+
+    public MemoStructuralAnalysis() {
+        super();
+        table = new StatementTable();
+        memo = new IdentityHashMap<Statement, Summary>();
+        lookups = 0;
+        hits = 0;
+    }
+
+    /** @return the table of canonical statements */
+    public StatementTable getTable() {
+        return table;
+    }
+
+    /** @return the number of summaries asked for */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /** @return the number of summaries that were reused */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Calculate the dependencies at the end of a statement, by summarising
+     * its canonical instance
+     */
+    @Override
+    public Dependencies calculateDependencies(Statement body, Dependencies in) {
+        return summarise(table.intern(body)).apply(in);
+    }
+
+    /** @return the summary of a statement, calculated at most once */
+    @Override
+    public Summary summarise(Statement statement) {
+        lookups++;
+        Summary result = memo.get(statement);
+        if (result != null) {
+            hits++;
+            return result;
+        }
+        result = super.summarise(statement);
+        memo.put(statement, result);
+        return result;
+    }
+}
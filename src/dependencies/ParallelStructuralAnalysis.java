@@ -0,0 +1,145 @@
+package dependencies;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import dependencies.Statement.Compound;
+import dependencies.Statement.Repeat;
+import dependencies.Statement.Select;
+
+/**
+ * Structural analysis on a fork-join pool. The branches of a select
+ * statement and the elements of a compound statement are summarised as
+ * independent tasks when they are large enough, and nested statements are
+ * split in the same way. The summaries of the parts are combined in the
+ * order of the statements, so the result does not depend on how the tasks
+ * are scheduled and is the same as for the sequential analysis.
+ */
+public class ParallelStructuralAnalysis extends StructuralAnalysis {
+    /** Statements with fewer parts than this are summarised sequentially */
+    private static final int THRESHOLD = 256;
+
+    /** Pool on which the tasks are run */
+    private final ForkJoinPool pool;
+    /** Number of statements in each statement, including itself; only
+     * statements at least as large as THRESHOLD are recorded */
+    private final Map<Statement, Integer> sizes;
+
+    /**
+     * @param pool
+     *            on which the tasks are run
+     */
+    public ParallelStructuralAnalysis(ForkJoinPool pool) {
+        super();
+        this.pool = pool;
+        this.sizes = new IdentityHashMap<Statement, Integer>();
+    }
+
+    /**
+     * Calculate the dependencies at the end of a statement, summarising its
+     * parts in parallel
+     */
+    @Override
+    public Dependencies calculateDependencies(Statement body, Dependencies in) {
+        sizes.clear();
+        count(body);
+        return pool.invoke(new Summarise(body)).apply(in);
+    }
+
+    /** Summarise large branches as separate tasks */
+    @Override
+    public Summary summariseSelect(Select select) {
+        if (!isLarge(select)) {
+            return super.summariseSelect(select);
+        }
+        Summary result = null;
+        for (Summary summary : summariseAll(select.getStatements())) {
+            result = result == null ? summary : result.union(summary);
+        }
+        return result;
+    }
+
+    /** Summarise large elements as separate tasks */
+    @Override
+    public Summary summariseCompound(Compound compound) {
+        if (!isLarge(compound)) {
+            return super.summariseCompound(compound);
+        }
+        Summary result = new Summary();
+        for (Summary summary : summariseAll(compound.getStatements())) {
+            result = result.then(summary);
+        }
+        return result;
+    }
+
+    /**
+     * @return the summaries of the statements in order; large statements
+     *         are summarised as separate tasks, small ones by this task
+     */
+    private List<Summary> summariseAll(Iterable<Statement> statements) {
+        List<Summarise> tasks = new ArrayList<Summarise>();
+        for (Statement statement : statements) {
+            Summarise task = new Summarise(statement);
+            if (isLarge(statement)) {
+                task.fork();
+            }
+            tasks.add(task);
+        }
+        List<Summary> summaries = new ArrayList<Summary>();
+        for (Summarise task : tasks) {
+            summaries.add(isLarge(task.statement) ? task.join()
+                    : task.compute());
+        }
+        return summaries;
+    }
+
+    /**
+     * @return true if the statement is large enough to split, and the
+     *         analysis is running in a fork-join pool
+     */
+    private boolean isLarge(Statement statement) {
+        return sizes.containsKey(statement)
+                && ForkJoinTask.inForkJoinPool();
+    }
+
+    /** Count the statements in a statement, including itself */
+    private int count(Statement statement) {
+        int size = 1;
+        if (statement instanceof Compound) {
+            for (Statement s : ((Compound) statement).getStatements()) {
+                size += count(s);
+            }
+        } else if (statement instanceof Select) {
+            for (Statement s : ((Select) statement).getStatements()) {
+                size += count(s);
+            }
+        } else if (statement instanceof Repeat) {
+            size += count(((Repeat) statement).getStatement());
+        }
+        if (size >= THRESHOLD) {
+            sizes.put(statement, size);
+        }
+        return size;
+    }
+
+    /** Task summarising a statement */
+    private class Summarise extends RecursiveTask<Summary> {
+        private static final long serialVersionUID = 1L;
+        private final Statement statement;
+
+        Summarise(Statement statement) {
+            super();
+            this.statement = statement;
+        }
+
+        @Override
+        protected Summary compute() {
+            return summarise(statement);
+        }
+    }
+}
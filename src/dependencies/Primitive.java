@@ -1,5 +1,7 @@
 package dependencies;
 
+import java.util.List;
+
 import source.Position;
 
 public abstract class Primitive extends Statement {
@@ -13,6 +15,24 @@ public abstract class Primitive extends Statement {
         return deps.copy();
     }
 
+    /** @return the summary of this primitive statement on its own,
+     * which for a null statement changes nothing */
+    public Summary getSummary() {
+        return new Summary();
+    }
+
+    /** @return the variables before this statement that a variable after
+     * it depends on, or null if the statement does not assign it, which
+     * is the case for a null statement */
+    DependSet sources(String variable) {
+        return null;
+    }
+
+    /** Summarising is the same for all primitives */
+    public Summary summarise(StructuralAnalysis analysis) {
+        return analysis.summarisePrimitive(this);
+    }
+
     /**
      * Building a graph is the same for all primitives
      * 
@@ -73,9 +93,93 @@ public abstract class Primitive extends Statement {
             Dependencies out = in.copy();
             return out.add(variable, expression);
         }
+
+        @Override
+        public Summary getSummary() {
+            Summary summary = new Summary();
+            summary.add(variable, expression);
+            return summary;
+        }
+
+        @Override
+        DependSet sources(String variable) {
+            return this.variable.equals(variable) ? expression : null;
+        }
+
        
         public String toString() {
             return variable + " := " + expression + ";";
         }
     }
+
+    /**
+     * A straight-line sequence of primitive statements, which labels a
+     * single edge of a coalesced flow graph. Its effect is calculated once,
+     * as a summary, when the block is constructed.
+     */
+    public static class Block extends Primitive {
+        List<Primitive> statements;
+        Summary summary;
+
+        /**
+         * @param statements
+         *            in order, of which there is at least one
+         */
+        public Block(List<Primitive> statements) {
+            super(statements.get(0).pos);
+            this.statements = statements;
+            this.summary = new Summary();
+            for (Primitive statement : statements) {
+                if (statement instanceof Block) {
+                    for (Primitive inner : ((Block) statement).statements) {
+                        addToSummary(inner);
+                    }
+                } else {
+                    addToSummary(statement);
+                }
+            }
+        }
+
+        private void addToSummary(Primitive statement) {
+            if (statement instanceof Assignment) {
+                Assignment assignment = (Assignment) statement;
+                summary.add(assignment.variable, assignment.expression);
+            }
+        }
+
+        /** @return the statements of the block in order */
+        public List<Primitive> getStatements() {
+            return statements;
+        }
+
+        /**
+         * Dependency calculation for a block applies its summary
+         * @param in dependencies
+         */
+        @Override
+        public Dependencies calculateDependencies(Dependencies in) {
+            return summary.apply(in);
+        }
+
+        @Override
+        public Summary getSummary() {
+            return summary;
+        }
+
+        @Override
+        DependSet sources(String variable) {
+            return summary.sources(variable);
+        }
+
+
+        public String toString() {
+            String result = "";
+            String sep = "";
+            for (Primitive statement : statements) {
+                result += sep + statement;
+                sep = " ";
+            }
+            return result;
+        }
+    }
 }
@@ -2,20 +2,49 @@ package dependencies;
 
 import java.io.PrintStream;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import graphs.Renumbering;
 
 public class Program {
+    /** Ways of analysing a program */
+    public enum Engine {
+        /** Solve the dependencies over the control flow graph */
+        FLOW_GRAPH,
+        /** Summarise the statements bottom-up without a flow graph */
+        STRUCTURAL
+    }
+
+    private SymbolTable symbols;
     private Set<String> inputs;
     private Statement body;
     private FlowGraph flowGraph;
     private Dependencies dependencies;
+    private FlowGraph.Solver solver = FlowGraph.Solver.WORKLIST;
+    private boolean coalesce = true;
+    private Engine engine = Engine.FLOW_GRAPH;
+    private StructuralAnalysis structural;
+    private int threads = 1;
+    private boolean memoise = false;
+    /** Order in which the flow graph is renumbered, or null to keep the
+     * order in which it was built */
+    private Renumbering.Order order = null;
+    /** Whether the dependencies are those of a query */
+    private boolean queried = false;
 
     
-    public Program( Set<String> inputs, Statement body ) {
+    public Program( SymbolTable symbols, Set<String> inputs, 
+            Statement body ) {
         super();
+        this.symbols = symbols;
         this.inputs = inputs;
         this.body = body;
     }
     
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+    
     public Set<String> getInputs() {
         return inputs;
     }
@@ -24,24 +53,191 @@ public class Program {
         return body;
     }
     
+    public void setSolver( FlowGraph.Solver solver ) {
+        this.solver = solver;
+    }
+    
+    /** Set whether straight-line chains of statements are coalesced
+     * into blocks before the analysis. The recursive solver always
+     * analyses the graph as built. */
+    public void setCoalesce( boolean coalesce ) {
+        this.coalesce = coalesce;
+    }
+    
+    public void setEngine( Engine engine ) {
+        this.engine = engine;
+    }
+    
+    /** Set the number of threads used by the structural engine */
+    public void setThreads( int threads ) {
+        this.threads = threads;
+    }
+    
+    /** Set whether the structural engine summarises repeated statements
+     * once, which shares them within the body. Memoised analysis is
+     * sequential, so it cannot be used on more than one thread. */
+    public void setMemoise( boolean memoise ) {
+        this.memoise = memoise;
+    }
+    
+    /** Set the order in which the vertices of the flow graph are
+     * renumbered once it is built, or null to keep the order in which
+     * they were created */
+    public void setOrder( Renumbering.Order order ) {
+        this.order = order;
+    }
+    
+    /** @return the control flow graph, or null if it has not been
+     *  built */
+    public FlowGraph getFlowGraph() {
+        return flowGraph;
+    }
+    
+    /** Build the control flow graph, unless the structural engine is
+     * used, which does not need one */
     public void buildProgram() {
         //System.out.println( body.toString() );
+        if( engine == Engine.STRUCTURAL ) {
+            return;
+        }
+        buildFlowGraph();
+    }
+    
+    /** Build the control flow graph */
+    private void buildFlowGraph() {
         flowGraph = new FlowGraph( body );
+        flowGraph.freeze();
+        if( coalesce && solver != FlowGraph.Solver.RECURSIVE ) {
+            flowGraph.coalesce();
+        }
+        if( order != null ) {
+            flowGraph.renumber( order );
+        }
+        flowGraph.setSolver( solver );
         //System.out.println( flowGraph );
     }
     
     public Dependencies analyse() {
         if( dependencies == null ) {
-            Dependencies inDepends = new Dependencies();
-            for( String var : inputs ) {
-                inDepends.put( var, new DependSet( var ) );
+            // Rows from an earlier analysis need not be kept
+            symbols.getRows().clear();
+            Dependencies inDepends = entryDependencies();
+            if( engine == Engine.STRUCTURAL ) {
+                if( memoise && threads > 1 ) {
+                    throw new IllegalStateException( 
+                            "Memoised analysis on more than one thread" );
+                }
+                ForkJoinPool pool = null;
+                if( threads > 1 ) {
+                    pool = new ForkJoinPool( threads );
+                    structural = new ParallelStructuralAnalysis( pool );
+                } else if( memoise ) {
+                    structural = new MemoStructuralAnalysis();
+                } else {
+                    structural = new StructuralAnalysis();
+                }
+                dependencies = 
+                    structural.calculateDependencies( body, inDepends );
+                if( pool != null ) {
+                    pool.shutdown();
+                }
+            } else {
+                dependencies = flowGraph.calculateDependencies( inDepends );
             }
-            dependencies = flowGraph.calculateDependencies( inDepends );
         }
         //System.out.println( flowGraph );
         return dependencies;
     }
     
+    /** Calculate the dependencies at the end of the program of a set of
+     * variables only, working backwards from the end so that only the
+     * statements that can influence them are examined. Each of the
+     * variables has dependencies, which may be empty.
+     * @param targets variables whose dependencies are wanted
+     * @return the dependencies of the targets
+     * @throws IllegalArgumentException if a target is not a variable of
+     *  the program
+     */
+    public Dependencies query( Set<String> targets ) {
+        if( flowGraph == null ) {
+            buildFlowGraph();
+        }
+        Dependencies inDepends = entryDependencies();
+        Dependencies result = new Dependencies();
+        flowGraph.resetCounts();
+        for( String var : targets ) {
+            result.put( var, flowGraph.query( inDepends, var, symbols ) );
+        }
+        dependencies = result;
+        queried = true;
+        return dependencies;
+    }
+    
+    /** @return the dependencies at the start of the program, in which
+     * each input depends on itself */
+    Dependencies entryDependencies() {
+        Dependencies inDepends = new Dependencies();
+        for( String var : inputs ) {
+            inDepends.put( var, new DependSet( symbols, var ) );
+        }
+        return inDepends;
+    }
+    
+    /** Start a session of edits to the program, each of which updates
+     * the dependencies incrementally */
+    public EditSession edit() {
+        return new EditSession( this );
+    }
+    
+    /** Record the body and dependencies after an edit */
+    void edited( Statement body, Dependencies dependencies ) {
+        this.body = body;
+        this.dependencies = dependencies;
+        this.queried = false;
+    }
+    
+    /** Print the work done by the analysis */
+    public void printStatistics( PrintStream out ) {
+        if( queried ) {
+            out.println( "Query: " + flowGraph.getIterations() + 
+                    " (node, variable) pairs visited, " + 
+                    flowGraph.getEvaluations() + " edges examined" );
+            return;
+        }
+        if( engine == Engine.STRUCTURAL ) {
+            out.println( "Structural analysis: " + 
+                    structural.getSummaries() + " statements summarised on " +
+                    threads + " thread" + (threads == 1 ? "" : "s") );
+            if( structural instanceof MemoStructuralAnalysis ) {
+                MemoStructuralAnalysis memo = 
+                    (MemoStructuralAnalysis)structural;
+                StatementTable table = memo.getTable();
+                out.println( "Statements: " + table.size() + " distinct of " +
+                        table.getLookups() + " (" + 
+                        percent( table.getHits(), table.getLookups() ) + 
+                        " repeated)" );
+                out.println( "Summaries: " + memo.getHits() + " of " + 
+                        memo.getLookups() + " reused (" +
+                        percent( memo.getHits(), memo.getLookups() ) + ")" );
+            }
+            return;
+        }
+        out.println( "Solver " + flowGraph.getSolver() + ": " +
+                flowGraph.getIterations() + " iterations, " +
+                flowGraph.getEvaluations() + " evaluations" );
+        RowPool rows = symbols.getRows();
+        out.println( "Rows: " + rows.size() + " distinct, " + 
+                rows.getUnionHits() + " of " + rows.getUnionLookups() + 
+                " unions reused (" + 
+                percent( rows.getUnionHits(), rows.getUnionLookups() ) + ")" );
+    }
+    
+    /** @return part as a percentage of whole */
+    private static String percent( long part, long whole ) {
+        return String.format( "%.1f%%", 
+                whole == 0 ? 0.0 : 100.0 * part / whole );
+    }
+    
     public void printDependencies( PrintStream out ) {
 		if( dependencies == null ) {
 			out.println( "No dependencies calculated" );
@@ -0,0 +1,207 @@
+package dependencies;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Pool of the rows of dependencies, the bit sets of variables that each
+ * variable depends on. Equal rows are interned as a single shared array,
+ * which is never changed, so that the same set held at many nodes takes
+ * the space of one and equal rows usually compare by reference. The union
+ * of two rows is also remembered, by the identity of the rows, so that
+ * merging the same pair again is a single lookup.
+ * Trailing zero words are dropped from interned rows.
+ * Both maps are caches of bounded size: when one is full it is emptied,
+ * so that a long edit session, which keeps making new rows, does not hold
+ * on to every row and union it has ever made. Rows interned before remain
+ * valid, as for clear, and those still in use are still shared.
+ * The pool belongs to the symbol table whose identifiers index its rows,
+ * and may be used by several threads.
+ */
+class RowPool {
+
+    /** Largest number of rows interned before the rows are forgotten */
+    private static final int MAX_ROWS = 1 << 17;
+    /** Largest number of unions remembered before they are forgotten */
+    private static final int MAX_UNIONS = 1 << 17;
+
+    /** A row compared by its contents */
+    private static class Key {
+        final long[] words;
+        final int hash;
+
+        Key( long[] words ) {
+            super();
+            this.words = words;
+            long h = 0;
+            for( int i = 0; i < words.length; i++ ) {
+                h ^= words[i] * (i + 1);
+            }
+            this.hash = (int)(h ^ (h >>> 32));
+        }
+        @Override
+        public boolean equals( Object other ) {
+            return other instanceof Key && 
+                DependSet.equalWords( words, ((Key)other).words );
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** A pair of rows compared by identity, in either order */
+    private static class Pair {
+        final long[] a, b;
+
+        Pair( long[] a, long[] b ) {
+            super();
+            this.a = a;
+            this.b = b;
+        }
+        @Override
+        public boolean equals( Object other ) {
+            if( !(other instanceof Pair) ) {
+                return false;
+            }
+            Pair pair = (Pair)other;
+            return (a == pair.a && b == pair.b) || 
+                (a == pair.b && b == pair.a);
+        }
+        @Override
+        public int hashCode() {
+            return System.identityHashCode( a ) ^ 
+                System.identityHashCode( b );
+        }
+    }
+
+    /** Interned row equal to each row */
+    private final ConcurrentMap<Key, long[]> rows;
+    /** Union of each pair of rows */
+    private final ConcurrentMap<Pair, long[]> unions;
+    /** The interned empty row */
+    private final long[] empty;
+    /** Number of unions asked for */
+    private final AtomicLong unionLookups;
+    /** Number of unions found in the pool */
+    private final AtomicLong unionHits;
+
+    /** Construct an empty pool */
+    RowPool() {
+        super();
+        rows = new ConcurrentHashMap<Key, long[]>();
+        unions = new ConcurrentHashMap<Pair, long[]>();
+        empty = new long[0];
+        unionLookups = new AtomicLong();
+        unionHits = new AtomicLong();
+        clear();
+    }
+    /** Forget all rows and unions, such as at the start of an analysis.
+     * Rows interned before remain valid but are no longer shared with
+     * rows interned after. */
+    void clear() {
+        forgetRows();
+        unions.clear();
+        unionLookups.set( 0 );
+        unionHits.set( 0 );
+    }
+    /** Forget all rows but the empty one */
+    private void forgetRows() {
+        rows.clear();
+        rows.put( new Key( empty ), empty );
+    }
+    /** @return the interned empty row */
+    long[] empty() {
+        return empty;
+    }
+    /** @return the interned row equal to words, which are copied if
+     *  they are added to the pool and may be changed afterwards */
+    long[] intern( long[] words ) {
+        long[] row = rows.get( new Key( words ) );
+        if( row == null ) {
+            row = trim( words );
+            row = insert( row == words ? words.clone() : row );
+        }
+        return row;
+    }
+    /** @return the union of two rows, which is a if b adds nothing to
+     *  it and is interned otherwise */
+    long[] union( long[] a, long[] b ) {
+        if( a == b ) {
+            return a;
+        }
+        unionLookups.incrementAndGet();
+        Pair pair = new Pair( a, b );
+        long[] result = unions.get( pair );
+        if( result != null ) {
+            unionHits.incrementAndGet();
+            return result;
+        }
+        result = a;
+        for( int i = 0; i < b.length; i++ ) {
+            long w = i < a.length ? a[i] : 0;
+            if( (b[i] & ~w) != 0 ) {
+                result = insert( or( a, b ) );
+                break;
+            }
+        }
+        if( unions.size() >= MAX_UNIONS ) {
+            unions.clear();
+        }
+        unions.putIfAbsent( pair, result );
+        return result;
+    }
+    /** @return the interned row of the bits of a that are not in b */
+    long[] difference( long[] a, long[] b ) {
+        long[] result = new long[a.length];
+        for( int i = 0; i < a.length; i++ ) {
+            result[i] = a[i] & ~(i < b.length ? b[i] : 0);
+        }
+        return insert( trim( result ) );
+    }
+    /** @return the number of distinct rows in the pool */
+    int size() {
+        return rows.size();
+    }
+    /** @return the number of unions asked for since the pool was last
+     *  cleared */
+    long getUnionLookups() {
+        return unionLookups.get();
+    }
+    /** @return the number of unions that were found in the pool */
+    long getUnionHits() {
+        return unionHits.get();
+    }
+    /** @return the interned row equal to a new row without trailing
+     *  zero words, which is the row itself unless there is one already */
+    private long[] insert( long[] row ) {
+        if( rows.size() >= MAX_ROWS ) {
+            forgetRows();
+        }
+        long[] previous = rows.putIfAbsent( new Key( row ), row );
+        return previous == null ? row : previous;
+    }
+    /** @return a new row that is the OR of two rows, without trailing
+     *  zero words */
+    private static long[] or( long[] a, long[] b ) {
+        long[] result = new long[Math.max( a.length, b.length )];
+        for( int i = 0; i < result.length; i++ ) {
+            result[i] = (i < a.length ? a[i] : 0) | (i < b.length ? b[i] : 0);
+        }
+        return trim( result );
+    }
+    /** @return the row without trailing zero words, which is the row
+     *  itself if it has none */
+    private static long[] trim( long[] row ) {
+        int n = row.length;
+        while( n > 0 && row[n - 1] == 0 ) {
+            n--;
+        }
+        if( n == row.length ) {
+            return row;
+        }
+        long[] result = new long[n];
+        System.arraycopy( row, 0, result, 0, n );
+        return result;
+    }
+}
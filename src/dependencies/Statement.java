@@ -28,6 +28,16 @@ public abstract class Statement {
     public abstract void buildGraph(ControlFlowNode entry,
             ControlFlowNode exit, FlowGraph flowGraph);
 
+    /**
+     * Summarise the effect of this statement on the dependencies, by
+     * calling the method of the analysis for this kind of statement
+     * 
+     * @param analysis
+     *            performing the summary
+     * @return summary of this statement
+     */
+    public abstract Summary summarise(StructuralAnalysis analysis);
+
     /**
      * A compound statement made up of a list of statements that are executed in
      * sequence.
@@ -49,6 +59,10 @@ public abstract class Statement {
             flowGraph.buildCompound(entry, exit, this);
         }
 
+        public Summary summarise(StructuralAnalysis analysis) {
+            return analysis.summariseCompound(this);
+        }
+
         public String toString() {
             String result = "{";
             for (Statement s : statements) {
@@ -76,6 +90,10 @@ public abstract class Statement {
             flowGraph.buildSelect(entry, exit, this);
         }
 
+        public Summary summarise(StructuralAnalysis analysis) {
+            return analysis.summariseSelect(this);
+        }
+
         public String toString() {
             String result = "select {";
             String sep = " ";
@@ -100,11 +118,20 @@ public abstract class Statement {
             return statement;
         }
 
+        /** Replace the body, for an edit session */
+        void setStatement(Statement statement) {
+            this.statement = statement;
+        }
+
         public void buildGraph(ControlFlowNode entry, ControlFlowNode exit,
                 FlowGraph flowGraph) {
             flowGraph.buildRepeat(entry, exit, this);
         }
 
+        public Summary summarise(StructuralAnalysis analysis) {
+            return analysis.summariseRepeat(this);
+        }
+
         public String toString() {
             return "repeat " + statement.toString();
         }
@@ -0,0 +1,129 @@
+package dependencies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dependencies.Primitive.Assignment;
+import dependencies.Primitive.NullStatement;
+import dependencies.Statement.Compound;
+import dependencies.Statement.Repeat;
+import dependencies.Statement.Select;
+
+/** StatementTable maps each statement to a canonical instance of the
+ * statements with the same structure, whatever their positions.
+ * Statements themselves compare by identity, so the structure is compared
+ * through a Key made from the kind of the statement and its parts. The
+ * canonical instance of a compound, select or repeat statement is built
+ * from the canonical instances of its parts, so that repeated statements
+ * become a single shared instance and the key of a statement with parts
+ * only compares the identity of its parts.
+ * Interning never changes the statement interned: the canonical instances
+ * of statements with parts belong to the table, and only primitive
+ * statements, which are never changed, are shared with the program.
+ */
+public class StatementTable {
+
+    /** Structure of a statement whose parts are canonical instances */
+    private static class Key {
+        /** Kind of statement */
+        private final Class<?> kind;
+        /** The parts of the statement: the canonical instances of the
+         * statements it contains, or the variable and expression of an
+         * assignment */
+        private final Object parts;
+
+        Key( Class<?> kind, Object parts ) {
+            super();
+            this.kind = kind;
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean equals( Object other ) {
+            return other instanceof Key && kind == ((Key)other).kind &&
+                    parts.equals( ((Key)other).parts );
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind.hashCode() + parts.hashCode();
+        }
+    }
+
+    /** Canonical instance of the statements with each structure */
+    private Map<Key, Statement> canonical;
+    /** Number of statements interned */
+    private long lookups;
+    /** Number of statements that already had a canonical instance */
+    private long hits;
+
+    /** Construct an empty table */
+    public StatementTable() {
+        super();
+        canonical = new HashMap<Key, Statement>();
+        lookups = 0;
+        hits = 0;
+    }
+    /** @return the canonical instance of a statement, adding one to the
+     *  table if there is none. The statement itself is not changed. */
+    public Statement intern( Statement statement ) {
+        Statement copy = statement;
+        Object parts;
+        if( statement instanceof Compound ) {
+            List<Statement> statements = new ArrayList<Statement>();
+            for( Statement s : ((Compound)statement).getStatements() ) {
+                statements.add( intern( s ) );
+            }
+            copy = new Compound( statement.pos, statements );
+            parts = statements;
+        } else if( statement instanceof Select ) {
+            Set<Statement> branches = new HashSet<Statement>();
+            for( Statement s : ((Select)statement).getStatements() ) {
+                branches.add( intern( s ) );
+            }
+            copy = new Select( statement.pos, branches );
+            parts = branches;
+        } else if( statement instanceof Repeat ) {
+            Statement body = intern( ((Repeat)statement).getStatement() );
+            copy = new Repeat( statement.pos, body );
+            parts = body;
+        } else if( statement instanceof Assignment ) {
+            Assignment assignment = (Assignment)statement;
+            parts = Arrays.asList( assignment.variable,
+                    assignment.expression );
+        } else if( statement instanceof NullStatement ) {
+            parts = Collections.emptyList();
+        } else {
+            // Any other statement is only the same as itself
+            parts = statement;
+        }
+        Key key = new Key( statement.getClass(), parts );
+        lookups++;
+        Statement result = canonical.get( key );
+        if( result == null ) {
+            canonical.put( key, copy );
+            return copy;
+        }
+        hits++;
+        return result;
+    }
+    /** @return the number of distinct statements in the table */
+    public int size() {
+        return canonical.size();
+    }
+    /** @return the number of statements interned */
+    public long getLookups() {
+        return lookups;
+    }
+    /** @return the number of statements interned that were already in
+     *  the table */
+    public long getHits() {
+        return hits;
+    }
+}
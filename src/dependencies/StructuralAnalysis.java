@@ -0,0 +1,81 @@
+package dependencies;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import dependencies.Statement.Compound;
+import dependencies.Statement.Repeat;
+import dependencies.Statement.Select;
+
+/**
+ * Syntax-directed dependency analysis, which summarises each statement
+ * bottom-up from the summaries of its parts without building a control
+ * flow graph: a compound statement composes the summaries of its
+ * statements in sequence, a select statement takes their union and a
+ * repeat statement takes the reflexive transitive closure of the summary
+ * of its body. Each statement calls back the method for its kind, so a
+ * subclass may change how any kind of statement is summarised.
+ */
+public class StructuralAnalysis {
+
+    /** Number of statements summarised, which may be counted by several
+     * threads */
+    private final AtomicLong summaries;
+
+    public StructuralAnalysis() {
+        super();
+        summaries = new AtomicLong();
+    }
+
+    /** @return the summary of a statement */
+    public Summary summarise(Statement statement) {
+        summaries.incrementAndGet();
+        return statement.summarise(this);
+    }
+
+    /** @return the number of statements summarised so far */
+    public long getSummaries() {
+        return summaries.get();
+    }
+
+    /**
+     * Calculate the dependencies at the end of a statement
+     *
+     * @param body
+     *            statement to be analysed
+     * @param in
+     *            dependencies at the start of the statement
+     * @return dependencies at the end of the statement
+     */
+    public Dependencies calculateDependencies(Statement body, Dependencies in) {
+        return summarise(body).apply(in);
+    }
+
+    /** @return the summary of a primitive statement */
+    public Summary summarisePrimitive(Primitive primitive) {
+        return primitive.getSummary();
+    }
+
+    /** @return the composition of the summaries of the statements */
+    public Summary summariseCompound(Compound compound) {
+        Summary result = new Summary();
+        for (Statement statement : compound.getStatements()) {
+            result = result.then(summarise(statement));
+        }
+        return result;
+    }
+
+    /** @return the union of the summaries of the alternatives */
+    public Summary summariseSelect(Select select) {
+        Summary result = null;
+        for (Statement statement : select.getStatements()) {
+            Summary summary = summarise(statement);
+            result = result == null ? summary : result.union(summary);
+        }
+        return result;
+    }
+
+    /** @return the closure of the summary of the body */
+    public Summary summariseRepeat(Repeat repeat) {
+        return summarise(repeat.getStatement()).closure();
+    }
+}
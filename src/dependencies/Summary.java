@@ -0,0 +1,187 @@
+package dependencies;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Summary of the effect of a statement on the dependencies. For each
+ * variable that the statement may assign it records the set of variables
+ * at the start of the statement that the variable may depend on at the
+ * end, which includes the variable itself if some path through the
+ * statement leaves it unchanged; all other variables are unchanged.
+ * Applying the summary gives the same dependencies as analysing the
+ * statement's flow graph, as the dependency calculation for each
+ * statement distributes over merging.
+ * Summaries are combined by sequential composition, union (for a choice
+ * of statements) and reflexive transitive closure (for a repetition).
+ */
+public class Summary {
+
+    /** Numbering of the variables, or null if nothing has been assigned */
+    private SymbolTable symbols;
+    /** Variables at the start that each assigned variable depends on */
+    private Map<String, DependSet> sources;
+
+    /** Construct the summary of an empty sequence, which changes nothing */
+    public Summary() {
+        super();
+        sources = new HashMap<String, DependSet>();
+    }
+
+    /**
+     * Extend the summary by an assignment at the end of the sequence
+     *
+     * @param variable
+     *            assigned
+     * @param expression
+     *            variables the assigned value depends on
+     */
+    public void add(String variable, DependSet expression) {
+        useSymbols(expression.getSymbols());
+        sources.put(variable, before(expression, symbols));
+    }
+
+    /**
+     * @return the variables at the start of the statement that a variable
+     *         at its end depends on, or null if the variable is unchanged
+     */
+    DependSet sources(String variable) {
+        return sources.get(variable);
+    }
+
+    /** @return the number of variables assigned */
+    public int size() {
+        return sources.size();
+    }
+
+    /**
+     * Apply the summary to the dependencies at the start of the statement
+     *
+     * @param in
+     *            dependencies at the start, which are not changed
+     * @return dependencies at the end of the statement
+     */
+    public Dependencies apply(Dependencies in) {
+        Dependencies out = in.copy();
+        for (Map.Entry<String, DependSet> entry : sources.entrySet()) {
+            out.assign(entry.getKey(), entry.getValue(), in);
+        }
+        return out;
+    }
+
+    /**
+     * @return the summary of this statement followed by the statement
+     *         summarised by next
+     */
+    public Summary then(Summary next) {
+        Summary result = copy();
+        result.useSymbols(next.symbols);
+        for (Map.Entry<String, DependSet> entry : next.sources.entrySet()) {
+            result.sources.put(entry.getKey(),
+                    before(entry.getValue(), result.symbols));
+        }
+        return result;
+    }
+
+    /**
+     * @return the summary of a choice between this statement and the
+     *         statement summarised by other
+     */
+    public Summary union(Summary other) {
+        Summary result = copy();
+        result.useSymbols(other.symbols);
+        for (Map.Entry<String, DependSet> entry : other.sources.entrySet()) {
+            String var = entry.getKey();
+            DependSet set = result.sources.get(var);
+            if (set == null) {
+                // Unchanged by this statement
+                set = new DependSet(result.symbols, var);
+                result.sources.put(var, set);
+            }
+            set.addAll(entry.getValue());
+        }
+        for (Map.Entry<String, DependSet> entry : sources.entrySet()) {
+            if (!other.sources.containsKey(entry.getKey())) {
+                // Unchanged by the other statement
+                result.sources.get(entry.getKey()).add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the summary of repeating this statement zero or more times.
+     *         The closure is found by repeated squaring of the summary of
+     *         doing nothing or this statement once.
+     */
+    public Summary closure() {
+        Summary result = new Summary().union(this);
+        while (true) {
+            Summary next = result.union(result.then(result));
+            if (next.equals(result)) {
+                return result;
+            }
+            result = next;
+        }
+    }
+
+    /** @return true if and only if the summaries are equal */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Summary
+                && sources.equals(((Summary) other).sources);
+    }
+
+    /** @return a hash code consistent with equals */
+    @Override
+    public int hashCode() {
+        return sources.hashCode();
+    }
+
+    public String toString() {
+        String result = "{";
+        String sep = " ";
+        Map<String, DependSet> sorted =
+            new TreeMap<String, DependSet>(sources);
+        for (Map.Entry<String, DependSet> entry : sorted.entrySet()) {
+            result += sep + entry.getKey() + " <- " + entry.getValue();
+            sep = ", ";
+        }
+        return result + " }";
+    }
+
+    /** @return a copy of this summary that shares no sets with it */
+    private Summary copy() {
+        Summary result = new Summary();
+        result.symbols = symbols;
+        for (Map.Entry<String, DependSet> entry : sources.entrySet()) {
+            result.sources.put(entry.getKey(), entry.getValue().copy());
+        }
+        return result;
+    }
+
+    /** Set the symbol table on first use */
+    private void useSymbols(SymbolTable table) {
+        if (symbols == null) {
+            symbols = table;
+        }
+    }
+
+    /**
+     * @return the variables at the start of this statement that the
+     *         variables of vars at its end depend on
+     */
+    private DependSet before(DependSet vars, SymbolTable table) {
+        DependSet result = new DependSet(table);
+        for (int id = vars.next(0); id >= 0; id = vars.next(id + 1)) {
+            DependSet set = sources.get(table.name(id));
+            if (set == null) {
+                // Not assigned, so its value at the start is used
+                result.add(id);
+            } else {
+                result.addAll(set);
+            }
+        }
+        return result;
+    }
+}
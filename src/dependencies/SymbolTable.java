@@ -0,0 +1,64 @@
+package dependencies;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** SymbolTable numbers the variables of a program.
+ * Each distinct variable name is given a dense identifier 0, 1, 2, ...
+ * in order of first use, so that sets of variables can be represented
+ * as bit sets indexed by identifier.
+ * The parser numbers every variable of a program, the inputs and the
+ * targets of assignments as well as those read, so that the table is
+ * complete before the program is analysed and the analysis, which may
+ * run on several threads, only reads it. The table itself is not
+ * synchronised.
+ */
+public class SymbolTable {
+
+    /** Identifier of each variable name */
+    private Map<String, Integer> ids;
+    /** Variable names indexed by identifier */
+    private List<String> names;
+    /** Pool of the rows of dependencies over these variables */
+    private RowPool rows;
+
+    /** Construct an empty symbol table */
+    public SymbolTable() {
+        super();
+        ids = new HashMap<String, Integer>();
+        names = new ArrayList<String>();
+        rows = new RowPool();
+    }
+    /** @return the identifier of a variable, adding it to the table if it
+     *  is not already there */
+    public int intern( String name ) {
+        Integer id = ids.get( name );
+        if( id == null ) {
+            id = names.size();
+            ids.put( name, id );
+            names.add( name );
+        }
+        return id;
+    }
+    /** @return the identifier of a variable, or -1 if it is not in the
+     *  table */
+    public int lookup( String name ) {
+        Integer id = ids.get( name );
+        return id == null ? -1 : id;
+    }
+    /** @return the name of the variable with identifier id */
+    public String name( int id ) {
+        return names.get( id );
+    }
+    /** @return the number of variables in the table */
+    public int size() {
+        return names.size();
+    }
+    /** @return the pool of the rows of dependencies over these
+     *  variables */
+    RowPool getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,84 @@
+package dependencies;
+
+/** Worklist of vertices for a fixed point calculation, taken in order of
+ * priority. Each vertex has a fixed priority, normally its reverse
+ * postorder number, and the pending vertices are held as a bit set indexed
+ * by priority, which serves as the in-queue test as well. Removing the
+ * vertex of highest priority (lowest number) scans from the lowest
+ * priority that may be pending, a word of 64 vertices at a time.
+ */
+class Worklist {
+
+    /** Vertex with each priority */
+    private final int[] vertex;
+    /** Priority of each vertex */
+    private final int[] priority;
+    /** Bit p is set if and only if the vertex with priority p is pending */
+    private final long[] pending;
+    /** No pending vertex has a priority below this */
+    private int low;
+    /** Number of pending vertices */
+    private int size;
+
+    /** Construct an empty worklist
+     * @param priority of each vertex, a permutation of 0 .. n-1
+     */
+    Worklist(int[] priority) {
+        super();
+        this.priority = priority;
+        this.vertex = new int[priority.length];
+        for (int v = 0; v < priority.length; v++) {
+            vertex[priority[v]] = v;
+        }
+        this.pending = new long[(priority.length + 63) >>> 6];
+        this.low = priority.length;
+        this.size = 0;
+    }
+
+    /** Add vertex v, unless it is already pending */
+    void add(int v) {
+        int p = priority[v];
+        long bit = 1L << p;
+        if ((pending[p >>> 6] & bit) == 0) {
+            pending[p >>> 6] |= bit;
+            size++;
+            if (p < low) {
+                low = p;
+            }
+        }
+    }
+
+    /** @return true if and only if vertex v is pending */
+    boolean contains(int v) {
+        int p = priority[v];
+        return (pending[p >>> 6] & (1L << p)) != 0;
+    }
+
+    /** @return true if and only if no vertex is pending */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return the number of pending vertices */
+    int size() {
+        return size;
+    }
+
+    /** Remove the pending vertex with the highest priority
+     * @return the vertex removed
+     * @requires !isEmpty()
+     */
+    int remove() {
+        assert size > 0;
+        int i = low >>> 6;
+        long w = pending[i] & (-1L << low);
+        while (w == 0) {
+            w = pending[++i];
+        }
+        int p = (i << 6) + Long.numberOfTrailingZeros(w);
+        pending[i] &= ~(1L << p);
+        size--;
+        low = p + 1;
+        return vertex[p];
+    }
+}
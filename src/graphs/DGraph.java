@@ -4,4 +4,13 @@ package graphs;
  * @author Ian Hayes */
 public interface DGraph<V extends Vertex, E> extends Graph<V, E> {
 
+    /** @return iterator over the edges entering vertex v; the target
+     * field of each returned edge is the source vertex of that edge */
+    public Iterable<AdjacentEdge<V,E>> incoming( V v );
+
+    /** @return the number of edges entering vertex v */
+    public int inDegree( V v );
+
+    /** @return the number of edges leaving vertex v */
+    public int outDegree( V v );
 }
@@ -1,5 +1,8 @@
 package graphs;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** Implementation of a directed graph using adjacency lists 
  * @author Ian Hayes
  */
@@ -7,9 +10,32 @@ public class DGraphAdj<V extends Vertex, E>
     extends GraphAdj<V, E>
     implements DGraph<V, E> 
 {
+    /** For each vertex, indexed in the same way as graph, the list of
+     * edges entering it. The target of each entry is the source vertex
+     * of the edge.
+     */
+    protected List<List<AdjacentEdge<V,E>>> incoming;
 
     public DGraphAdj() {
         super();
+        incoming = new ArrayList<List<AdjacentEdge<V,E>>>();
+    }
+    /** Construct an empty graph
+     * @param indexEdges whether to maintain an edge index so that
+     *  hasEdge and addEdgeIfAbsent take constant expected time
+     */
+    public DGraphAdj( boolean indexEdges ) {
+        super( indexEdges );
+        incoming = new ArrayList<List<AdjacentEdge<V,E>>>();
+    }
+    /** Add a vertex to the graph
+     * @param v vertex to be added
+     * @requires v is not already in a graph
+     */
+    @Override
+    public void addVertex( V v ) {
+        super.addVertex( v );
+        incoming.add( new ArrayList<AdjacentEdge<V,E>>() );
     }
     /** Add an edge to the graph
      * As this is a directed graph it is added from u to v only
@@ -22,5 +48,91 @@ public class DGraphAdj<V extends Vertex, E>
         assert hasVertex(u) && hasVertex(v);
         graph.get(u.getIndex()).edges.add( 
                 new Graph.AdjacentEdge<V,E>(v,e) );
+        incoming.get(v.getIndex()).add( 
+                new Graph.AdjacentEdge<V,E>(u,e) );
+        if( edgeIndex != null ) {
+            edgeIndex.add( u.getIndex(), v.getIndex() );
+        }
+    }
+    /** Remove an edge from the graph
+     * @param u source vertex
+     * @param v target vertex
+     * @param e edge information of the edge, compared by identity
+     * @return true if and only if the edge was in the graph
+     * @throws UnsupportedOperationException if the edges are indexed,
+     *  as the index does not support removal
+     */
+    public boolean removeEdge( V u, V v, E e ) {
+        assert hasVertex(u) && hasVertex(v);
+        if( edgeIndex != null ) {
+            throw new UnsupportedOperationException( 
+                    "removeEdge on an indexed graph" );
+        }
+        return remove( graph.get(u.getIndex()).edges, v, e ) &&
+            remove( incoming.get(v.getIndex()), u, e );
+    }
+    /** Remove a vertex without edges from the graph. The last vertex of
+     * the graph takes its index, so the indices of other vertices are
+     * unchanged.
+     * @param v vertex to be removed
+     * @requires v is a vertex of the graph without edges in or out
+     * @throws UnsupportedOperationException if the edges are indexed,
+     *  as the index is by vertex index
+     */
+    public void removeVertex( V v ) {
+        assert hasVertex(v) && graph.get(v.getIndex()).edges.isEmpty() &&
+            incoming.get(v.getIndex()).isEmpty();
+        if( edgeIndex != null ) {
+            throw new UnsupportedOperationException( 
+                    "removeVertex on an indexed graph" );
+        }
+        int i = v.getIndex();
+        int last = graph.size() - 1;
+        VEntry moved = graph.remove( last );
+        List<AdjacentEdge<V,E>> movedIncoming = incoming.remove( last );
+        if( i != last ) {
+            graph.set( i, moved );
+            incoming.set( i, movedIncoming );
+            moved.source.setIndex( i );
+        }
+        v.setIndex( -1 );
+    }
+    /** Remove the entry with the given target and edge information
+     * from a list of edges
+     * @return true if and only if such an entry was found
+     */
+    private boolean remove( List<AdjacentEdge<V,E>> edges, V target, E e ) {
+        for( int i = 0; i < edges.size(); i++ ) {
+            AdjacentEdge<V,E> edge = edges.get(i);
+            if( edge.target == target && edge.edgeInfo == e ) {
+                edges.remove( i );
+                return true;
+            }
+        }
+        return false;
+    }
+    /** Allow iteration over the edges entering a vertex
+     * @param v target vertex
+     * @return edges entering v, each with its source as target field
+     */
+    public Iterable<AdjacentEdge<V,E>> incoming( V v ) {
+        return incoming.get(v.getIndex());
+    }
+    /** @return the number of edges entering v */
+    public int inDegree( V v ) {
+        return incoming.get(v.getIndex()).size();
+    }
+    /** @return the number of edges leaving v */
+    public int outDegree( V v ) {
+        return graph.get(v.getIndex()).edges.size();
+    }
+    /** Construct an immutable compressed sparse row copy of this graph,
+     * for use once the graph is complete.
+     * The copy shares the vertices of this graph, so no further vertices
+     * should be added to this graph.
+     * @return a CSR graph with the same vertices and edges
+     */
+    public DGraphCsr<V, E> freeze() {
+        return new DGraphCsr<V, E>( this );
     }
 }
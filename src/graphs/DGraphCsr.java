@@ -0,0 +1,291 @@
+package graphs;
+
+import java.util.Iterator;
+
+/** Implementation of an immutable directed graph using a compressed
+ * sparse row (CSR) representation.
+ * The edges leaving vertex i are stored contiguously at positions
+ * offsets[i] .. offsets[i+1]-1 of the parallel arrays targets and labels,
+ * so iterating over the edges adjacent to a vertex walks contiguous arrays
+ * rather than a linked list.
+ * A CSR graph is built from an existing directed graph once that graph
+ * is complete; it shares the vertices of the graph it was built from,
+ * which should not be modified afterwards. The copy may number the
+ * vertices differently from the original, in which case vertices are
+ * mapped to their index in the copy through a renumbering table.
+ *
+ * @param <V extends Vertex> type of information stored with each vertex
+ * @param <E> type of information stored with each edge
+ */
+public class DGraphCsr<V extends Vertex, E> implements DGraph<V, E> {
+
+    /** Vertices indexed by their vertex index */
+    private final Object[] vertices;
+    /** Start of the edges of each vertex; offsets[size()] is the
+     * number of edges */
+    private final int[] offsets;
+    /** Index of the target vertex of each edge */
+    private final int[] targets;
+    /** Edge information of each edge, or null if no edge has any */
+    private final Object[] labels;
+    /** Reverse index, built on first use: the edges entering vertex i are
+     * the edges at positions inEdges[inOffsets[i]] .. 
+     * inEdges[inOffsets[i+1]-1], whose sources are held in sources. */
+    private int[] inOffsets, inEdges, sources;
+    /** Index in this graph of each vertex, indexed by the vertex's own
+     * index, or null if they are the same */
+    private final int[] renumbering;
+
+    /** Construct a CSR copy of a directed graph
+     * @param source graph to be copied
+     */
+    public DGraphCsr( DGraph<V,E> source ) {
+        this( source, null );
+    }
+    /** Construct a CSR copy of a directed graph with its vertices
+     * renumbered
+     * @param source graph to be copied
+     * @param newIndex index in the copy of each vertex, indexed by its
+     *  index in source, or null to keep the same indices
+     * @requires newIndex is a permutation of 0 .. source.size()-1
+     */
+    DGraphCsr( DGraph<V,E> source, int[] newIndex ) {
+        super();
+        int n = source.size();
+        vertices = new Object[n];
+        offsets = new int[n + 1];
+        // First pass: place the vertices and count the edges of each
+        boolean same = true;
+        int maxIndex = -1;
+        for( int u = 0; u < n; u++ ) {
+            int i = newIndex == null ? u : newIndex[u];
+            V v = source.vertex( u );
+            assert 0 <= i && i < n && vertices[i] == null;
+            vertices[i] = v;
+            offsets[i + 1] = source.degree( u );
+            same &= v.getIndex() == i;
+            maxIndex = Math.max( maxIndex, v.getIndex() );
+        }
+        for( int i = 0; i < n; i++ ) {
+            offsets[i + 1] += offsets[i];
+        }
+        targets = new int[offsets[n]];
+        labels = new Object[offsets[n]];
+        // Second pass: fill in the edges in adjacency order
+        for( int u = 0; u < n; u++ ) {
+            int k = offsets[newIndex == null ? u : newIndex[u]];
+            for( int j = 0; j < source.degree( u ); j++ ) {
+                int t = source.target( u, j );
+                targets[k] = newIndex == null ? t : newIndex[t];
+                labels[k] = source.label( u, j );
+                k++;
+            }
+        }
+        // Vertices whose own index differs from their index in this
+        // graph are looked up through a renumbering table
+        if( same ) {
+            renumbering = null;
+        } else {
+            renumbering = new int[maxIndex + 1];
+            java.util.Arrays.fill( renumbering, -1 );
+            for( int i = 0; i < n; i++ ) {
+                renumbering[vertexAt( i ).getIndex()] = i;
+            }
+        }
+    }
+    /** Construct a CSR graph directly from its arrays, which are not
+     * copied
+     * @param vertices each of which has its index in this array set
+     * @param offsets start of the edges of each vertex, of length
+     *  vertices.length+1
+     * @param targets index of the target of each edge
+     * @param labels edge information of each edge, or null if the edges
+     *  have no edge information
+     */
+    DGraphCsr( Object[] vertices, int[] offsets, int[] targets, 
+            Object[] labels ) {
+        super();
+        assert offsets.length == vertices.length + 1 &&
+            offsets[vertices.length] == targets.length;
+        this.vertices = vertices;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.labels = labels;
+        this.renumbering = null;
+    }
+    /** @return the number of vertices in the graph */
+    public int size() {
+        return vertices.length;
+    }
+    /** @return the number of edges in the graph */
+    public int edgeCount() {
+        return targets.length;
+    }
+    /** A CSR graph is immutable
+     * @throws UnsupportedOperationException always */
+    public void addVertex( V v ) {
+        throw new UnsupportedOperationException(
+                "CSR graphs are immutable" );
+    }
+    /** A CSR graph is immutable
+     * @throws UnsupportedOperationException always */
+    public void addEdge( V u, V v, E e ) {
+        throw new UnsupportedOperationException(
+                "CSR graphs are immutable" );
+    }
+    /** A CSR graph is immutable
+     * @throws UnsupportedOperationException always */
+    public boolean addEdgeIfAbsent( V u, V v, E e ) {
+        throw new UnsupportedOperationException(
+                "CSR graphs are immutable" );
+    }
+    /** @return the number of edges entering v */
+    public int inDegree( V v ) {
+        buildReverse();
+        int i = indexOf( v );
+        return inOffsets[i + 1] - inOffsets[i];
+    }
+    /** @return the number of edges leaving v */
+    public int outDegree( V v ) {
+        return degree( indexOf( v ) );
+    }
+    /** Check is graph has an edge from u to v
+     * @param u source vertex
+     * @param v target vertex
+     * @requires u and v are vertices of the graph
+     * @return true if and only if the graph has an edge from u to v
+     */
+    public boolean hasEdge( V u, V v ) {
+        assert hasVertex(u) && hasVertex(v);
+        int source = indexOf( u );
+        int target = indexOf( v );
+        for( int k = offsets[source]; k < offsets[source + 1]; k++ ) {
+            if( targets[k] == target ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /** Internal check that a vertex is actually in the graph
+     * @return true if and only if v is in this graph  */
+    private boolean hasVertex( V v ) {
+        int i = v.getIndex();
+        if( renumbering != null ) {
+            i = 0 <= i && i < renumbering.length ? renumbering[i] : -1;
+        }
+        return 0 <= i && i < vertices.length && vertices[i] == v;
+    }
+    /** @return the index of vertex v in this graph */
+    private int indexOf( V v ) {
+        return renumbering == null ? v.getIndex() : 
+            renumbering[v.getIndex()];
+    }
+    /** @return the vertex with index i */
+    @SuppressWarnings("unchecked")
+    private V vertexAt( int i ) {
+        return (V)vertices[i];
+    }
+    /** @return the index of vertex v */
+    public int index( V v ) {
+        assert hasVertex(v);
+        return indexOf( v );
+    }
+    /** @return the vertex with index v */
+    public V vertex( int v ) {
+        return vertexAt( v );
+    }
+    /** @return the number of edges leaving the vertex with index v */
+    public int degree( int v ) {
+        return offsets[v + 1] - offsets[v];
+    }
+    /** @return the index of the target of the i-th edge leaving v */
+    public int target( int v, int i ) {
+        return targets[offsets[v] + i];
+    }
+    /** @return the edge information of the i-th edge leaving v */
+    public E label( int v, int i ) {
+        return labelAt( offsets[v] + i );
+    }
+    /** @return the edge information of the edge at position k */
+    @SuppressWarnings("unchecked")
+    private E labelAt( int k ) {
+        return labels == null ? null : (E)labels[k];
+    }
+    /** Allow iteration over the vertices of a graph
+     * @return an iterator over the vertices in index order
+     */
+    public Iterator<V> iterator() {
+        return new Range<V>( 0, vertices.length ) {
+            V get( int i ) {
+                return vertexAt( i );
+            }
+        };
+    }
+    /** Allow iteration over the edges adjacent to a vertex
+     * @param u source vertex
+     * @return edges adjacent to u as an Iterable
+     */
+    public Iterable<AdjacentEdge<V,E>> adjacent( V u ) {
+        final int i = indexOf( u );
+        return new Iterable<AdjacentEdge<V,E>>() {
+            public Iterator<AdjacentEdge<V,E>> iterator() {
+                return new Range<AdjacentEdge<V,E>>(
+                        offsets[i], offsets[i + 1] ) {
+                    AdjacentEdge<V,E> get( int k ) {
+                        return new AdjacentEdge<V,E>(
+                                vertexAt( targets[k] ), labelAt( k ) );
+                    }
+                };
+            }
+        };
+    }
+    /** Allow iteration over the edges entering a vertex
+     * @param v target vertex
+     * @return edges entering v, each with its source as target field
+     */
+    public Iterable<AdjacentEdge<V,E>> incoming( V v ) {
+        buildReverse();
+        final int i = indexOf( v );
+        return new Iterable<AdjacentEdge<V,E>>() {
+            public Iterator<AdjacentEdge<V,E>> iterator() {
+                return new Range<AdjacentEdge<V,E>>(
+                        inOffsets[i], inOffsets[i + 1] ) {
+                    AdjacentEdge<V,E> get( int k ) {
+                        return new AdjacentEdge<V,E>(
+                                vertexAt( sources[k] ), 
+                                labelAt( inEdges[k] ) );
+                    }
+                };
+            }
+        };
+    }
+    /** Build the reverse index the first time it is needed, by counting
+     * the in-degree of each vertex and then filling in the edges in
+     * order of their source vertex. */
+    private synchronized void buildReverse() {
+        if( inOffsets != null ) {
+            return;
+        }
+        int n = vertices.length;
+        int[] start = new int[n + 1];
+        for( int k = 0; k < targets.length; k++ ) {
+            start[targets[k] + 1]++;
+        }
+        for( int i = 0; i < n; i++ ) {
+            start[i + 1] += start[i];
+        }
+        int[] next = start.clone();
+        int[] edges = new int[targets.length];
+        int[] from = new int[targets.length];
+        for( int i = 0; i < n; i++ ) {
+            for( int k = offsets[i]; k < offsets[i + 1]; k++ ) {
+                int j = next[targets[k]]++;
+                edges[j] = k;
+                from[j] = i;
+            }
+        }
+        inEdges = edges;
+        sources = from;
+        inOffsets = start;
+    }
+}
@@ -0,0 +1,580 @@
+package graphs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/** Implementation of an immutable directed graph in compressed sparse row
+ * form whose arrays are held outside the Java heap.
+ * The vertex offsets, edge targets and edge label identifiers are stored
+ * in a direct byte buffer or, optionally, in a memory-mapped file, so they
+ * add nothing to the heap and are never scanned by the garbage collector.
+ * Edge information is held in a side table indexed by label identifier;
+ * an edge information object shared by several edges is stored once.
+ * The layout of the edges is the same as for DGraphCsr.
+ * <p>
+ * A graph may be a copy of another graph, whose vertices it shares, or
+ * be built edge by edge with a Builder, in which case nothing on the heap
+ * grows with the size of the graph: its vertices are made by a factory
+ * when they are asked for, so that two requests for the same vertex give
+ * different objects with the same index. A graph held in a file starts
+ * with a header giving its size, so the file may be opened again later.
+ * The header and arrays share one buffer, which is limited to
+ * Integer.MAX_VALUE bytes, i.e., a little over 500 million vertices and
+ * edge slots.
+ *
+ * @param <V extends Vertex> type of information stored with each vertex
+ * @param <E> type of information stored with each edge
+ */
+public class DGraphOffHeap<V extends Vertex, E> implements DGraph<V, E> {
+
+    /** Identifies a graph file: "DGOH" */
+    private static final int MAGIC = 0x44474f48;
+    /** Current version of the file layout */
+    private static final int VERSION = 1;
+    /** Number of ints in the header: magic, version, vertices, edges */
+    private static final int HEADER = 4;
+    /** Label identifier used for edges without edge information */
+    private static final int NO_LABEL = -1;
+
+    /** Number of vertices */
+    private final int n;
+    /** Vertices indexed by their vertex index, or null if they are made
+     * by factory */
+    private final Object[] vertices;
+    /** Creates the vertices if they are not held */
+    private final GraphIO.VertexFactory<V> factory;
+    /** Index in this graph of each held vertex, indexed by the vertex's
+     * own index, or null if they are the same */
+    private final int[] renumbering;
+    /** Start of the edges of each vertex, as for DGraphCsr */
+    private final IntBuffer offsets;
+    /** Index of the target vertex of each edge */
+    private final IntBuffer targets;
+    /** Identifier of the edge information of each edge */
+    private final IntBuffer labelIds;
+    /** Edge information indexed by label identifier */
+    private final List<E> labels;
+    /** Reverse index, built on first use, as for DGraphCsr */
+    private IntBuffer inOffsets, inEdges, sources;
+
+    /** Construct a graph from a buffer holding its header and arrays
+     * @param store buffer positioned at the header
+     * @param vertices held, or null if they are made by factory
+     * @param factory creates the vertices if they are not held
+     * @param labels edge information indexed by label identifier
+     * @throws IllegalArgumentException if the buffer does not hold a
+     *  graph
+     */
+    private DGraphOffHeap( ByteBuffer store, Object[] vertices,
+            GraphIO.VertexFactory<V> factory, List<E> labels ) {
+        super();
+        IntBuffer header = slice( store, 0, HEADER );
+        if( header.get( 0 ) != MAGIC || header.get( 1 ) != VERSION ) {
+            throw new IllegalArgumentException( "Not an off-heap graph" );
+        }
+        n = header.get( 2 );
+        int m = header.get( 3 );
+        if( n < 0 || m < 0 ||
+                store.capacity() < bytes( HEADER + 1L + n + 2L * m ) ) {
+            throw new IllegalArgumentException( "Corrupt off-heap graph" );
+        }
+        this.vertices = vertices;
+        this.factory = factory;
+        this.labels = labels;
+        offsets = slice( store, HEADER, n + 1 );
+        targets = slice( store, HEADER + n + 1, m );
+        labelIds = slice( store, HEADER + n + 1 + m, m );
+        renumbering = vertices == null ? null : renumbering( vertices );
+    }
+    /** @return the index in the graph of each vertex, indexed by the
+     *  vertex's own index, or null if they are all the same */
+    private static int[] renumbering( Object[] vertices ) {
+        boolean same = true;
+        int maxIndex = -1;
+        for( int i = 0; i < vertices.length; i++ ) {
+            int own = ((Vertex)vertices[i]).getIndex();
+            same &= own == i;
+            maxIndex = Math.max( maxIndex, own );
+        }
+        if( same ) {
+            return null;
+        }
+        int[] result = new int[maxIndex + 1];
+        java.util.Arrays.fill( result, -1 );
+        for( int i = 0; i < vertices.length; i++ ) {
+            result[((Vertex)vertices[i]).getIndex()] = i;
+        }
+        return result;
+    }
+
+    /** Construct an off-heap copy of a directed graph held in direct
+     * memory. The copy shares the vertices of source, and numbers them
+     * as source does.
+     * @param source graph to be copied
+     * @return the copy
+     */
+    public static <V extends Vertex, E> DGraphOffHeap<V,E> copy(
+            DGraph<V,E> source ) {
+        try {
+            return copy( source, null );
+        } catch( IOException e ) {
+            throw new AssertionError( e );
+        }
+    }
+    /** Construct an off-heap copy of a directed graph held in a
+     * memory-mapped file, as for copy(source)
+     * @param source graph to be copied
+     * @param file in which the graph is held, which is created or
+     *  overwritten and then memory-mapped, or null for direct memory
+     * @return the copy
+     * @throws IOException if the file cannot be mapped
+     */
+    public static <V extends Vertex, E> DGraphOffHeap<V,E> copy(
+            DGraph<V,E> source, File file ) throws IOException {
+        long edges = 0;
+        for( int u = 0; u < source.size(); u++ ) {
+            edges += source.degree( u );
+        }
+        Builder<V,E> builder = new Builder<V,E>( source.size(), edges, file );
+        Object[] vertices = new Object[source.size()];
+        for( int u = 0; u < source.size(); u++ ) {
+            vertices[u] = source.vertex( u );
+            for( int i = 0; i < source.degree( u ); i++ ) {
+                builder.addEdge( u, source.target( u, i ),
+                        source.label( u, i ) );
+            }
+        }
+        return builder.build( vertices, null );
+    }
+    /** Open a graph held in a file by a copy or a builder
+     * @param file holding the graph, which is memory-mapped read-only
+     * @param factory creates the vertices of the graph
+     * @param labels the edge information of the graph when it was
+     *  written, as given by getLabels, as it is not held in the file
+     * @return the graph
+     * @throws IOException if the file cannot be mapped or does not hold a
+     *  graph
+     */
+    public static <V extends Vertex, E> DGraphOffHeap<V,E> open( File file,
+            GraphIO.VertexFactory<V> factory, List<E> labels )
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try {
+            if( raf.length() > Integer.MAX_VALUE ) {
+                throw new IOException( "Graph file too large" );
+            }
+            ByteBuffer store = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, raf.length() );
+            return new DGraphOffHeap<V,E>( store, null, factory,
+                    new ArrayList<E>( labels ) );
+        } catch( IllegalArgumentException e ) {
+            throw new IOException( file + ": " + e.getMessage() );
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Builds an off-heap graph by writing its edges straight into the
+     * buffer, in order of their source vertex, so that a graph larger
+     * than the heap may be built. The numbers of vertices and edges are
+     * fixed in advance.
+     * Within the package, edges may instead be added in any order by
+     * first counting the edges leaving each vertex and then placing
+     * them, as EdgeListLoader does.
+     */
+    public static class Builder<V extends Vertex, E> {
+        /** Buffer holding the header and arrays */
+        private final ByteBuffer store;
+        /** Views of the arrays of store */
+        private final IntBuffer header, offsets, targets, labelIds;
+        /** Number of vertices */
+        private final int n;
+        /** Distinct edge information, in order of label identifier */
+        private final List<E> labels;
+        /** Label identifier of each edge information object */
+        private final Map<E, Integer> ids;
+        /** Number of edges added */
+        private int count;
+        /** Source of the last edge added; the offsets of vertices up to
+         * it are set */
+        private int last;
+        /** Whether edges are counted and placed rather than added; the
+         * offsets then hold the counts, and then the next free position,
+         * of each vertex */
+        private boolean counted, placing;
+
+        /** Start building a graph
+         * @param vertices number of vertices of the graph
+         * @param edges number of edges of the graph
+         * @param file in which the graph is held, which is created or
+         *  overwritten and then memory-mapped, or null for direct memory
+         * @throws IOException if the file cannot be mapped
+         * @throws IllegalArgumentException if the graph is too large
+         */
+        public Builder( int vertices, long edges, File file )
+                throws IOException {
+            super();
+            if( vertices < 0 || edges < 0 ) {
+                throw new IllegalArgumentException( "Negative graph size" );
+            }
+            int size = bytes( HEADER + 1L + vertices + 2 * edges );
+            store = file == null ? ByteBuffer.allocateDirect( size )
+                    : map( file, size );
+            int m = (int)edges;
+            n = vertices;
+            header = slice( store, 0, HEADER );
+            offsets = slice( store, HEADER, n + 1 );
+            targets = slice( store, HEADER + n + 1, m );
+            labelIds = slice( store, HEADER + n + 1 + m, m );
+            labels = new ArrayList<E>();
+            ids = new IdentityHashMap<E, Integer>();
+            header.put( 0, MAGIC );
+            header.put( 1, VERSION );
+            header.put( 2, n );
+            header.put( 3, m );
+            count = 0;
+            last = 0;
+            counted = false;
+            placing = false;
+            offsets.put( 0, 0 );
+        }
+        /** Add an edge
+         * @param u index of the source vertex, no less than that of the
+         *  edge added before
+         * @param v index of the target vertex
+         * @param e edge information, or null
+         * @throws IllegalArgumentException if the edge is out of order,
+         *  a vertex index is out of range, or all the edges have been
+         *  added
+         */
+        public void addEdge( int u, int v, E e ) {
+            if( counted ) {
+                throw new IllegalStateException( "Edges are being placed" );
+            }
+            if( u < last || u >= n || v < 0 || v >= n ) {
+                throw new IllegalArgumentException( "Edge " + u + " -> " +
+                        v + " out of order or range" );
+            }
+            if( count == targets.limit() ) {
+                throw new IllegalArgumentException( "Too many edges" );
+            }
+            setOffsets( u );
+            targets.put( count, v );
+            labelIds.put( count, labelId( e ) );
+            count++;
+        }
+        /** Complete the graph
+         * @param factory creates the vertices of the graph
+         * @return the graph
+         * @throws IllegalStateException if edges are missing
+         */
+        public DGraphOffHeap<V,E> build( GraphIO.VertexFactory<V> factory ) {
+            return build( null, factory );
+        }
+        /** @return the edge information of the graph, in order of label
+         *  identifier, as needed to open a graph file again */
+        public List<E> getLabels() {
+            return labels;
+        }
+        /** Count an edge leaving the vertex with index u. Every edge is
+         * counted before any is placed, and none are added. */
+        void countEdge( int u ) {
+            assert !placing && count == 0 && 0 <= u && u < n;
+            counted = true;
+            offsets.put( u, offsets.get( u ) + 1 );
+        }
+        /** Place an edge after the edges leaving u placed before it. The
+         * edges placed are those counted. */
+        void placeEdge( int u, int v, E e ) {
+            assert counted && 0 <= u && u < n && 0 <= v && v < n;
+            if( !placing ) {
+                // Turn the counts into the start of the edges of each
+                // vertex
+                int start = 0;
+                for( int w = 0; w < n; w++ ) {
+                    int degree = offsets.get( w );
+                    offsets.put( w, start );
+                    start += degree;
+                }
+                assert start == targets.limit();
+                placing = true;
+            }
+            int k = offsets.get( u );
+            offsets.put( u, k + 1 );
+            targets.put( k, v );
+            labelIds.put( k, labelId( e ) );
+            count++;
+        }
+        /** Complete the graph with the given vertices or factory */
+        DGraphOffHeap<V,E> build( Object[] vertices,
+                GraphIO.VertexFactory<V> factory ) {
+            if( count != targets.limit() ) {
+                throw new IllegalStateException( "Only " + count + " of " +
+                        targets.limit() + " edges added" );
+            }
+            if( placing ) {
+                // Each offset now holds the end of the edges of its
+                // vertex, which is the start of those of the next
+                for( int w = n; w > 0; w-- ) {
+                    offsets.put( w, offsets.get( w - 1 ) );
+                }
+                offsets.put( 0, 0 );
+            } else {
+                setOffsets( n );
+            }
+            return new DGraphOffHeap<V,E>( store, vertices, factory,
+                    labels );
+        }
+        /** Set the offsets of the vertices after the last source up to u
+         * to the number of edges added */
+        private void setOffsets( int u ) {
+            while( last < u ) {
+                last++;
+                offsets.put( last, count );
+            }
+        }
+        /** @return the identifier of the edge information e, adding it to
+         * the side table if it is not already there */
+        private int labelId( E e ) {
+            if( e == null ) {
+                return NO_LABEL;
+            }
+            Integer id = ids.get( e );
+            if( id == null ) {
+                id = labels.size();
+                labels.add( e );
+                ids.put( e, id );
+            }
+            return id;
+        }
+    }
+
+    /** @return the number of bytes needed for count ints
+     * @throws IllegalArgumentException if a buffer cannot hold them */
+    private static int bytes( long count ) {
+        if( count * 4 > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException(
+                    "Graph too large for an off-heap buffer" );
+        }
+        return (int)(count * 4);
+    }
+    /** Map size bytes of a file, which is created or overwritten */
+    private static ByteBuffer map( File file, int size )
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try {
+            // Clear any previous contents
+            raf.setLength( 0 );
+            raf.setLength( size );
+            // The mapping remains valid after the file is closed
+            return raf.getChannel().map( FileChannel.MapMode.READ_WRITE,
+                    0, size );
+        } finally {
+            raf.close();
+        }
+    }
+    /** @return an int view of count ints of a buffer starting at int
+     *  position start */
+    private static IntBuffer slice( ByteBuffer store, int start,
+            int count ) {
+        ByteBuffer bytes = store.duplicate().order( ByteOrder.nativeOrder() );
+        bytes.position( start * 4 );
+        bytes.limit( (start + count) * 4 );
+        return bytes.slice().order( ByteOrder.nativeOrder() ).asIntBuffer();
+    }
+
+    /** @return the number of vertices in the graph */
+    public int size() {
+        return n;
+    }
+    /** @return the number of edges in the graph */
+    public int edgeCount() {
+        return targets.limit();
+    }
+    /** @return the edge information of the graph, in order of label
+     *  identifier, as needed to open a graph file again */
+    public List<E> getLabels() {
+        return labels;
+    }
+    /** An off-heap graph is immutable
+     * @throws UnsupportedOperationException always */
+    public void addVertex( V v ) {
+        throw new UnsupportedOperationException(
+                "Off-heap graphs are immutable" );
+    }
+    /** An off-heap graph is immutable
+     * @throws UnsupportedOperationException always */
+    public void addEdge( V u, V v, E e ) {
+        throw new UnsupportedOperationException(
+                "Off-heap graphs are immutable" );
+    }
+    /** An off-heap graph is immutable
+     * @throws UnsupportedOperationException always */
+    public boolean addEdgeIfAbsent( V u, V v, E e ) {
+        throw new UnsupportedOperationException(
+                "Off-heap graphs are immutable" );
+    }
+    /** @return the number of edges entering v */
+    public int inDegree( V v ) {
+        buildReverse();
+        int i = indexOf( v );
+        return inOffsets.get( i + 1 ) - inOffsets.get( i );
+    }
+    /** @return the number of edges leaving v */
+    public int outDegree( V v ) {
+        return degree( indexOf( v ) );
+    }
+    /** Check is graph has an edge from u to v
+     * @param u source vertex
+     * @param v target vertex
+     * @requires u and v are vertices of the graph
+     * @return true if and only if the graph has an edge from u to v
+     */
+    public boolean hasEdge( V u, V v ) {
+        int i = indexOf( u );
+        int target = indexOf( v );
+        for( int k = offsets.get( i ); k < offsets.get( i + 1 ); k++ ) {
+            if( targets.get( k ) == target ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /** @return the index in this graph of vertex v */
+    private int indexOf( V v ) {
+        return renumbering == null ? v.getIndex() :
+            renumbering[v.getIndex()];
+    }
+    /** @return the vertex with index i */
+    @SuppressWarnings("unchecked")
+    private V vertexAt( int i ) {
+        if( vertices != null ) {
+            return (V)vertices[i];
+        }
+        V v = factory.newVertex();
+        assert v.getIndex() == -1;
+        v.setIndex( i );
+        return v;
+    }
+    /** @return the edge information of the edge at position k */
+    private E labelAt( int k ) {
+        int id = labelIds.get( k );
+        return id == NO_LABEL ? null : labels.get( id );
+    }
+    /** @return the index of vertex v */
+    public int index( V v ) {
+        int i = indexOf( v );
+        assert 0 <= i && i < n && (vertices == null || vertices[i] == v);
+        return i;
+    }
+    /** @return the vertex with index v */
+    public V vertex( int v ) {
+        return vertexAt( v );
+    }
+    /** @return the number of edges leaving the vertex with index v */
+    public int degree( int v ) {
+        return offsets.get( v + 1 ) - offsets.get( v );
+    }
+    /** @return the index of the target of the i-th edge leaving v */
+    public int target( int v, int i ) {
+        return targets.get( offsets.get( v ) + i );
+    }
+    /** @return the edge information of the i-th edge leaving v */
+    public E label( int v, int i ) {
+        return labelAt( offsets.get( v ) + i );
+    }
+    /** Allow iteration over the vertices of a graph
+     * @return an iterator over the vertices in index order
+     */
+    public Iterator<V> iterator() {
+        return new Range<V>( 0, n ) {
+            V get( int i ) {
+                return vertexAt( i );
+            }
+        };
+    }
+    /** Allow iteration over the edges adjacent to a vertex
+     * @param u source vertex
+     * @return edges adjacent to u as an Iterable
+     */
+    public Iterable<AdjacentEdge<V,E>> adjacent( V u ) {
+        final int i = indexOf( u );
+        return new Iterable<AdjacentEdge<V,E>>() {
+            public Iterator<AdjacentEdge<V,E>> iterator() {
+                return new Range<AdjacentEdge<V,E>>(
+                        offsets.get( i ), offsets.get( i + 1 ) ) {
+                    AdjacentEdge<V,E> get( int k ) {
+                        return new AdjacentEdge<V,E>(
+                                vertexAt( targets.get( k ) ), labelAt( k ) );
+                    }
+                };
+            }
+        };
+    }
+    /** Allow iteration over the edges entering a vertex
+     * @param v target vertex
+     * @return edges entering v, each with its source as target field
+     */
+    public Iterable<AdjacentEdge<V,E>> incoming( V v ) {
+        buildReverse();
+        final int i = indexOf( v );
+        return new Iterable<AdjacentEdge<V,E>>() {
+            public Iterator<AdjacentEdge<V,E>> iterator() {
+                return new Range<AdjacentEdge<V,E>>(
+                        inOffsets.get( i ), inOffsets.get( i + 1 ) ) {
+                    AdjacentEdge<V,E> get( int k ) {
+                        return new AdjacentEdge<V,E>(
+                                vertexAt( sources.get( k ) ),
+                                labelAt( inEdges.get( k ) ) );
+                    }
+                };
+            }
+        };
+    }
+    /** Build the reverse index in direct memory the first time it is
+     * needed, in the same way as DGraphCsr. */
+    private synchronized void buildReverse() {
+        if( inOffsets != null ) {
+            return;
+        }
+        int m = targets.limit();
+        ByteBuffer store = ByteBuffer.allocateDirect(
+                bytes( 2L * (n + 1) + 2L * m ) );
+        IntBuffer start = slice( store, 0, n + 1 );
+        IntBuffer edges = slice( store, n + 1, m );
+        IntBuffer from = slice( store, n + 1 + m, m );
+        // Next free position for each vertex, only needed while filling
+        IntBuffer next = slice( store, n + 1 + 2 * m, n + 1 );
+        for( int k = 0; k < m; k++ ) {
+            int t = targets.get( k ) + 1;
+            start.put( t, start.get( t ) + 1 );
+        }
+        for( int i = 0; i < n; i++ ) {
+            start.put( i + 1, start.get( i + 1 ) + start.get( i ) );
+        }
+        next.put( start );
+        start.rewind();
+        for( int i = 0; i < n; i++ ) {
+            for( int k = offsets.get( i ); k < offsets.get( i + 1 ); k++ ) {
+                int t = targets.get( k );
+                int j = next.get( t );
+                next.put( t, j + 1 );
+                edges.put( j, k );
+                from.put( j, i );
+            }
+        }
+        inEdges = edges;
+        sources = from;
+        inOffsets = start;
+    }
+}
@@ -0,0 +1,255 @@
+package graphs;
+
+/** The dominator tree of a directed graph with respect to an entry vertex.
+ * A vertex d dominates a vertex v if every path from the entry to v passes
+ * through d; the immediate dominator of v is its closest strict dominator.
+ * The tree is calculated with the Lengauer-Tarjan algorithm (the simple
+ * version with path compression) in O(E log V) time, using explicit
+ * stacks so that it is safe on arbitrarily deep graphs.
+ * Vertices that are not reachable from the entry have no dominators.
+ */
+public class Dominators {
+
+    /** Index of the entry vertex */
+    private final int entry;
+    /** Immediate dominator of each vertex, indexed by vertex index;
+     * -1 for the entry and for unreachable vertices */
+    private final int[] idom;
+    /** Preorder and postorder numbers of each vertex in the dominator
+     * tree, used to answer dominance queries in constant time;
+     * -1 for unreachable vertices */
+    private final int[] treePre, treePost;
+    /** Depth of each vertex in the dominator tree; the entry has depth 0 */
+    private final int[] depth;
+    /** The predecessors of vertex v are held at positions
+     * predOffsets[v] .. predOffsets[v+1]-1 of preds */
+    private final int[] predOffsets, preds;
+
+    /** Calculate the dominator tree of a graph
+     * @param graph directed graph
+     * @param entry index of the entry vertex of the graph
+     */
+    public Dominators( DGraph<?,?> graph, int entry ) {
+        super();
+        int n = graph.size();
+        this.entry = entry;
+        // Build the predecessor lists
+        predOffsets = new int[n + 1];
+        for( int u = 0; u < n; u++ ) {
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                predOffsets[graph.target( u, i ) + 1]++;
+            }
+        }
+        for( int v = 0; v < n; v++ ) {
+            predOffsets[v + 1] += predOffsets[v];
+        }
+        preds = new int[predOffsets[n]];
+        int[] next = predOffsets.clone();
+        for( int u = 0; u < n; u++ ) {
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                preds[next[graph.target( u, i )]++] = u;
+            }
+        }
+        idom = lengauerTarjan( graph );
+        // Number the dominator tree for dominance queries
+        treePre = new int[n];
+        treePost = new int[n];
+        depth = new int[n];
+        numberTree();
+    }
+
+    /** The Lengauer-Tarjan algorithm. Internally vertices are identified
+     * by their depth first search preorder number.
+     * @return the immediate dominator of each vertex
+     */
+    private int[] lengauerTarjan( DGraph<?,?> graph ) {
+        int n = graph.size();
+        int[] dfnum = new int[n];       // preorder number of each vertex
+        java.util.Arrays.fill( dfnum, -1 );
+        int[] vertex = new int[n];      // vertex with each preorder number
+        int[] parent = new int[n];      // DFS tree parent (by number)
+        // Iterative depth first search numbering the reachable vertices
+        int[] callVertex = new int[n];
+        int[] callEdge = new int[n];
+        int top = 0;
+        int count = 0;
+        callVertex[0] = entry;
+        dfnum[entry] = count;
+        vertex[count] = entry;
+        parent[count] = -1;
+        count++;
+        while( top >= 0 ) {
+            int v = callVertex[top];
+            int i = callEdge[top];
+            if( i < graph.degree( v ) ) {
+                callEdge[top]++;
+                int w = graph.target( v, i );
+                if( dfnum[w] == -1 ) {
+                    dfnum[w] = count;
+                    vertex[count] = w;
+                    parent[count] = dfnum[v];
+                    count++;
+                    top++;
+                    callVertex[top] = w;
+                    callEdge[top] = 0;
+                }
+            } else {
+                top--;
+            }
+        }
+        // All of the following arrays are indexed by preorder number
+        int[] semi = new int[count];
+        int[] dom = new int[count];
+        int[] ancestor = new int[count];
+        int[] label = new int[count];
+        int[] bucketHead = new int[count];
+        int[] bucketNext = new int[count];
+        int[] path = new int[count];    // stack used by eval
+        for( int w = 0; w < count; w++ ) {
+            semi[w] = w;
+            label[w] = w;
+            ancestor[w] = -1;
+            bucketHead[w] = -1;
+        }
+        for( int w = count - 1; w > 0; w-- ) {
+            int v = vertex[w];
+            // Semidominator of w from its predecessors
+            for( int k = predOffsets[v]; k < predOffsets[v + 1]; k++ ) {
+                int p = dfnum[preds[k]];
+                if( p == -1 ) {
+                    continue;       // unreachable predecessor
+                }
+                int u = eval( p, ancestor, label, semi, path );
+                if( semi[u] < semi[w] ) {
+                    semi[w] = semi[u];
+                }
+            }
+            bucketNext[w] = bucketHead[semi[w]];
+            bucketHead[semi[w]] = w;
+            // Link w into the forest
+            int p = parent[w];
+            ancestor[w] = p;
+            // Implicitly define the immediate dominators of the bucket
+            for( int b = bucketHead[p]; b != -1; b = bucketNext[b] ) {
+                int u = eval( b, ancestor, label, semi, path );
+                dom[b] = semi[u] < semi[b] ? u : p;
+            }
+            bucketHead[p] = -1;
+        }
+        // Explicitly define the immediate dominators in preorder
+        int[] result = new int[n];
+        java.util.Arrays.fill( result, -1 );
+        for( int w = 1; w < count; w++ ) {
+            if( dom[w] != semi[w] ) {
+                dom[w] = dom[dom[w]];
+            }
+            result[vertex[w]] = vertex[dom[w]];
+        }
+        return result;
+    }
+    /** Find the vertex with the minimum semidominator on the forest path
+     * from v to its root, compressing the path as it goes.
+     */
+    private static int eval( int v, int[] ancestor, int[] label,
+            int[] semi, int[] path ) {
+        if( ancestor[v] == -1 ) {
+            return v;
+        }
+        // Iterative path compression: collect the path towards the root
+        // and then compress it from the end nearest the root.
+        int sp = 0;
+        int x = v;
+        while( ancestor[ancestor[x]] != -1 ) {
+            path[sp++] = x;
+            x = ancestor[x];
+        }
+        while( sp > 0 ) {
+            int y = path[--sp];
+            int a = ancestor[y];
+            if( semi[label[a]] < semi[label[y]] ) {
+                label[y] = label[a];
+            }
+            ancestor[y] = ancestor[a];
+        }
+        return label[v];
+    }
+    /** Number the vertices of the dominator tree in preorder and postorder
+     * and calculate their depths, using an explicit stack. */
+    private void numberTree() {
+        int n = idom.length;
+        // Children lists of the dominator tree
+        int[] childOffsets = new int[n + 1];
+        for( int v = 0; v < n; v++ ) {
+            if( idom[v] != -1 ) {
+                childOffsets[idom[v] + 1]++;
+            }
+        }
+        for( int v = 0; v < n; v++ ) {
+            childOffsets[v + 1] += childOffsets[v];
+        }
+        int[] children = new int[childOffsets[n]];
+        int[] next = childOffsets.clone();
+        for( int v = 0; v < n; v++ ) {
+            if( idom[v] != -1 ) {
+                children[next[idom[v]]++] = v;
+            }
+        }
+        java.util.Arrays.fill( treePre, -1 );
+        java.util.Arrays.fill( treePost, -1 );
+        int[] callVertex = new int[n];
+        int[] callChild = new int[n];
+        int top = 0;
+        int pre = 0, post = 0;
+        callVertex[0] = entry;
+        callChild[0] = childOffsets[entry];
+        treePre[entry] = pre++;
+        depth[entry] = 0;
+        while( top >= 0 ) {
+            int v = callVertex[top];
+            if( callChild[top] < childOffsets[v + 1] ) {
+                int w = children[callChild[top]++];
+                treePre[w] = pre++;
+                depth[w] = depth[v] + 1;
+                top++;
+                callVertex[top] = w;
+                callChild[top] = childOffsets[w];
+            } else {
+                treePost[v] = post++;
+                top--;
+            }
+        }
+    }
+
+    /** @return the index of the entry vertex */
+    public int entry() {
+        return entry;
+    }
+    /** @return true if and only if vertex v is reachable from the entry */
+    public boolean isReachable( int v ) {
+        return treePre[v] != -1;
+    }
+    /** @return the immediate dominator of vertex v, or -1 if v is the
+     *  entry or is unreachable */
+    public int idom( int v ) {
+        return idom[v];
+    }
+    /** @return the depth of reachable vertex v in the dominator tree */
+    public int depth( int v ) {
+        assert isReachable( v );
+        return depth[v];
+    }
+    /** @return true if and only if vertex d dominates vertex v.
+     * Every reachable vertex dominates itself. */
+    public boolean dominates( int d, int v ) {
+        return isReachable( d ) && isReachable( v ) &&
+            treePre[d] <= treePre[v] && treePost[v] <= treePost[d];
+    }
+    /** @return the number of predecessors of vertex v */
+    int predecessorCount( int v ) {
+        return predOffsets[v + 1] - predOffsets[v];
+    }
+    /** @return the i-th predecessor of vertex v */
+    int predecessor( int v, int i ) {
+        return preds[predOffsets[v] + i];
+    }
+}
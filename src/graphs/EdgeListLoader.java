@@ -0,0 +1,609 @@
+package graphs;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.io.Writer;
+import java.util.Arrays;
+
+/** Loads a directed graph from a text file listing its edges.
+ * Each edge is given as a pair of non-negative integers "u v", the
+ * indices of its source and target vertices, normally one pair per line.
+ * Numbers are separated by any white space and '#' starts a comment that
+ * runs to the end of the line. The graph has a vertex for every index from
+ * the first index, 0 unless set otherwise, up to the largest index
+ * mentioned, so a file numbering its vertices from 1 should set the first
+ * index to 1; the vertex with index i in the file has index i-first in
+ * the graph.
+ * The file is memory-mapped and scanned byte by byte, without creating a
+ * String or other object per line, in two passes: the first counts the
+ * edges leaving each vertex and the second fills in a compressed sparse
+ * row graph. Apart from the vertices themselves, the heap holds only the
+ * CSR arrays, i.e., four bytes per vertex and four bytes per edge.
+ * A graph too large for the heap may instead be loaded into a
+ * DGraphOffHeap, whose arrays are filled in place, at the cost of a third
+ * pass to size them.
+ *
+ * @param <V extends Vertex> type of information stored with each vertex
+ */
+public class EdgeListLoader<V extends Vertex> {
+
+    /** Size of the regions in which the file is mapped */
+    private static final long CHUNK = 1L << 30;
+    /** Size of the blocks in which a region is scanned */
+    private static final int BLOCK = 1 << 16;
+    /** Number of edges passed on together by a scanner */
+    private static final int BATCH = 1 << 12;
+    /** Largest number of vertices, so that an array of one more int, as
+     * for the CSR offsets, can still be allocated */
+    private static final int MAX_VERTICES = Integer.MAX_VALUE - 9;
+
+    /** Creates the vertices of the loaded graph */
+    private final GraphIO.VertexFactory<V> factory;
+    /** Index in the file of the first vertex */
+    private int first;
+    /** Size in bytes of the file read by the last load */
+    private long bytesLoaded;
+    /** Time taken by the last load in nanoseconds */
+    private long elapsed;
+
+    /** Construct a loader
+     * @param factory creates the vertices of the loaded graphs
+     */
+    public EdgeListLoader( GraphIO.VertexFactory<V> factory ) {
+        super();
+        this.factory = factory;
+        this.first = 0;
+    }
+
+    /** Set the index in the files loaded of the first vertex, which is
+     * the vertex with index 0 in the graph, e.g., 1 for files that
+     * number their vertices from 1. Every index in the file must be at
+     * least first.
+     * @param first index of the first vertex
+     * @throws IllegalArgumentException if first is negative
+     */
+    public void setFirstIndex( int first ) {
+        if( first < 0 ) {
+            throw new IllegalArgumentException( "Negative first index" );
+        }
+        this.first = first;
+    }
+    /** @return the index in the files loaded of the first vertex */
+    public int getFirstIndex() {
+        return first;
+    }
+
+    /** Load a graph
+     * @param file listing the edges
+     * @return the graph, whose edges have no edge information
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public <E> DGraphCsr<V,E> load( File file ) throws IOException {
+        long start = System.nanoTime();
+        // First pass: count the edges leaving each vertex
+        final int[][] degree = { new int[1024] };
+        final int[] max = { -1 };
+        final long[] edges = { 0 };
+        scan( file, new Scanner( first ) {
+            void edges( int[] sources, int[] targets, int count )
+                    throws IOException {
+                int top = max[0];
+                for( int i = 0; i < count; i++ ) {
+                    top = Math.max( top, Math.max( sources[i],
+                            targets[i] ) );
+                }
+                if( top >= degree[0].length ) {
+                    degree[0] = Arrays.copyOf( degree[0],
+                        (int)Math.min( Math.max( 2L * degree[0].length,
+                                top + 1L ), MAX_VERTICES ) );
+                }
+                max[0] = top;
+                int[] counts = degree[0];
+                for( int i = 0; i < count; i++ ) {
+                    counts[sources[i]]++;
+                }
+                edges[0] += count;
+                if( edges[0] > Integer.MAX_VALUE - 8 ) {
+                    throw new IOException( "Too many edges" );
+                }
+            }
+        } );
+        int n = max[0] + 1;
+        final int[] offsets = new int[n + 1];
+        for( int u = 0; u < n; u++ ) {
+            offsets[u + 1] = offsets[u] + degree[0][u];
+        }
+        degree[0] = null;
+        // Second pass: fill in the edges, in file order for each vertex
+        final int[] targets = new int[offsets[n]];
+        final int[] next = Arrays.copyOf( offsets, n );
+        scan( file, new Scanner( first ) {
+            void edges( int[] sources, int[] batch, int count ) {
+                for( int i = 0; i < count; i++ ) {
+                    targets[next[sources[i]]++] = batch[i];
+                }
+            }
+        } );
+        Object[] vertices = new Object[n];
+        for( int i = 0; i < n; i++ ) {
+            V v = factory.newVertex();
+            assert v.getIndex() == -1;
+            v.setIndex( i );
+            vertices[i] = v;
+        }
+        bytesLoaded = file.length();
+        elapsed = System.nanoTime() - start;
+        return new DGraphCsr<V,E>( vertices, offsets, targets, null );
+    }
+    /** Load a graph into an off-heap graph, without holding anything on
+     * the heap that grows with the size of the graph. A first pass finds
+     * the number of vertices and edges, a second counts the edges leaving
+     * each vertex in the graph's own buffer and a third places them.
+     * The vertices of the graph are made by the factory when asked for.
+     * @param file listing the edges
+     * @param store file in which the graph is held, which is created or
+     *  overwritten and may be opened again by DGraphOffHeap.open, or null
+     *  to hold it in direct memory
+     * @return the graph, whose edges have no edge information
+     * @throws IOException if the file cannot be read or is malformed, or
+     *  the store cannot be mapped
+     */
+    public <E> DGraphOffHeap<V,E> loadOffHeap( File file, File store )
+            throws IOException {
+        long start = System.nanoTime();
+        // First pass: find the size of the graph
+        final int[] max = { -1 };
+        final long[] edges = { 0 };
+        scan( file, new Scanner( first ) {
+            void edges( int[] sources, int[] targets, int count ) {
+                int top = max[0];
+                for( int i = 0; i < count; i++ ) {
+                    top = Math.max( top, Math.max( sources[i],
+                            targets[i] ) );
+                }
+                max[0] = top;
+                edges[0] += count;
+            }
+        } );
+        final DGraphOffHeap.Builder<V,E> builder =
+            new DGraphOffHeap.Builder<V,E>( max[0] + 1, edges[0], store );
+        // Second pass: count the edges leaving each vertex
+        scan( file, new Scanner( first ) {
+            void edges( int[] sources, int[] targets, int count ) {
+                for( int i = 0; i < count; i++ ) {
+                    builder.countEdge( sources[i] );
+                }
+            }
+        } );
+        // Third pass: place the edges, in file order for each vertex
+        scan( file, new Scanner( first ) {
+            void edges( int[] sources, int[] targets, int count ) {
+                for( int i = 0; i < count; i++ ) {
+                    builder.placeEdge( sources[i], targets[i], null );
+                }
+            }
+        } );
+        DGraphOffHeap<V,E> graph = builder.build( factory );
+        bytesLoaded = file.length();
+        elapsed = System.nanoTime() - start;
+        return graph;
+    }
+    /** @return the size in bytes of the file read by the last load */
+    public long getBytesLoaded() {
+        return bytesLoaded;
+    }
+    /** @return the time taken by the last load in nanoseconds */
+    public long getElapsed() {
+        return elapsed;
+    }
+    /** @return the throughput of the last load in megabytes of the file
+     *  per second */
+    public double getThroughput() {
+        return elapsed == 0 ? 0 : (bytesLoaded / 1e6) / (elapsed / 1e9);
+    }
+
+    /** Scan a whole file, mapping it a region at a time */
+    private static void scan( File file, Scanner scanner )
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            byte[] block = new byte[BLOCK];
+            for( long pos = 0; pos < size; pos += CHUNK ) {
+                MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min( CHUNK, size - pos ) );
+                // Copy the region out a block at a time, so that the
+                // scanning loop works on an array and is compiled as a
+                // method rather than replaced on the stack
+                for( int i = 0; i < buffer.limit(); i += BLOCK ) {
+                    int length = Math.min( BLOCK, buffer.limit() - i );
+                    buffer.get( block, 0, length );
+                    scanner.scan( block, length, pos + i );
+                }
+            }
+            scanner.finish();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Byte-level scanner for the edge list format. Its state is kept
+     * between blocks so that a number may span two blocks. Edges are
+     * passed on in batches, so that the loaders handle them in tight
+     * loops whose scattered memory accesses can overlap, rather than one
+     * at a time between the bytes of the file. */
+    private static abstract class Scanner {
+        /** Index in the file of the first vertex */
+        private final int first;
+        /** Value of the number being scanned */
+        private long value;
+        /** Whether a number is being scanned */
+        private boolean inNumber;
+        /** Whether a comment is being skipped */
+        private boolean inComment;
+        /** Source of the current edge, once its first number is complete,
+         * otherwise -1 */
+        private int source = -1;
+        /** Sources and targets of the edges scanned but not yet passed
+         * on */
+        private final int[] sources, targets;
+        /** Number of edges in the batch */
+        private int count;
+
+        /** Construct a scanner
+         * @param first index in the file of the first vertex, which is
+         *  subtracted from every index scanned
+         */
+        Scanner( int first ) {
+            super();
+            this.first = first;
+            sources = new int[BATCH];
+            targets = new int[BATCH];
+            count = 0;
+        }
+
+        /** Called for each batch of edges in the file, in order, with the
+         * vertex indices in the graph
+         * @param sources source of each edge
+         * @param targets target of each edge
+         * @param count number of edges in the batch
+         */
+        abstract void edges( int[] sources, int[] targets, int count )
+                throws IOException;
+
+        /** Scan the first length bytes of a block of the file starting at
+         * offset base */
+        void scan( byte[] block, int length, long base ) throws IOException {
+            long value = this.value;
+            boolean inNumber = this.inNumber;
+            boolean inComment = this.inComment;
+            for( int i = 0; i < length; i++ ) {
+                byte b = block[i];
+                if( inComment ) {
+                    inComment = b != '\n';
+                } else if( '0' <= b && b <= '9' ) {
+                    value = 10 * value + (b - '0');
+                    if( value > Integer.MAX_VALUE ) {
+                        throw new IOException( "Vertex index too large at " +
+                                "byte " + (base + i) );
+                    }
+                    inNumber = true;
+                } else if( b == ' ' || b == '\t' || b == '\n' ||
+                        b == '\r' || b == '#' ) {
+                    if( inNumber ) {
+                        endNumber( value, base + i );
+                        value = 0;
+                        inNumber = false;
+                    }
+                    inComment = b == '#';
+                } else {
+                    throw new IOException( "Unexpected character at byte " +
+                            (base + i) );
+                }
+            }
+            this.value = value;
+            this.inNumber = inNumber;
+            this.inComment = inComment;
+        }
+        /** Complete the scan at the end of the file */
+        void finish() throws IOException {
+            if( inNumber ) {
+                endNumber( value, -1 );
+            }
+            if( source != -1 ) {
+                throw new IOException( "Incomplete edge at end of file" );
+            }
+            if( count > 0 ) {
+                edges( sources, targets, count );
+                count = 0;
+            }
+        }
+        /** Complete a number ending at byte end of the file, or -1 at the
+         * end of the file */
+        private void endNumber( long value, long end ) throws IOException {
+            long index = value - first;
+            if( index < 0 || index >= MAX_VERTICES ) {
+                throw new IOException( "Vertex index " + value +
+                        " out of range " + first + " .. " +
+                        (first + MAX_VERTICES - 1L) +
+                        (end < 0 ? " at end of file" : " at byte " + end) );
+            }
+            if( source == -1 ) {
+                source = (int)index;
+            } else {
+                sources[count] = source;
+                targets[count] = (int)index;
+                source = -1;
+                if( ++count == BATCH ) {
+                    edges( sources, targets, count );
+                    count = 0;
+                }
+            }
+        }
+    }
+
+    /** Generate an edge list in a temporary file, load it on and off the
+     * heap, and check that both graphs have the number of vertices and
+     * the edges generated, in order. The edges are pseudo-random over
+     * one vertex for every eight edges, the first edge being from the
+     * last vertex, and the indices are written from the loader's first
+     * index.
+     * @param loader used to load the list
+     * @param edges number of edges generated
+     * @param timing whether the load throughputs are reported
+     * @throws IOException if the temporary file cannot be written or read
+     */
+    private static void checkGenerated( EdgeListLoader<Vertex> loader,
+            long edges, boolean timing ) throws IOException {
+        int n = (int)Math.min( Math.max( edges / 8, 1 ), MAX_VERTICES );
+        long first = loader.getFirstIndex();
+        File file = File.createTempFile( "edges", ".txt" );
+        file.deleteOnExit();
+        Writer out = new BufferedWriter( new FileWriter( file ), BLOCK );
+        long seed = 1;
+        try {
+            for( long e = 0; e < edges; e++ ) {
+                long u = n - 1, v = 0;
+                if( e > 0 ) {
+                    seed = nextRandom( seed );
+                    u = (seed >>> 16) % n;
+                    seed = nextRandom( seed );
+                    v = (seed >>> 16) % n;
+                }
+                out.write( (u + first) + " " + (v + first) + "\n" );
+            }
+        } finally {
+            out.close();
+        }
+        DGraphCsr<Vertex,Object> heap = loader.load( file );
+        String heapTime = String.format( " (%.1f MB/s)",
+                loader.getThroughput() );
+        DGraphOffHeap<Vertex,Object> offHeap = loader.loadOffHeap( file,
+                null );
+        String offHeapTime = String.format( " (%.1f MB/s)",
+                loader.getThroughput() );
+        // The same edges again, in the order generated
+        long[] next = new long[n];
+        seed = 1;
+        boolean same = heap.size() == n && offHeap.size() == n &&
+                heap.edgeCount() == edges && offHeap.edgeCount() == edges;
+        for( long e = 0; same && e < edges; e++ ) {
+            int u = n - 1, v = 0;
+            if( e > 0 ) {
+                seed = nextRandom( seed );
+                u = (int)((seed >>> 16) % n);
+                seed = nextRandom( seed );
+                v = (int)((seed >>> 16) % n);
+            }
+            int i = (int)next[u]++;
+            same = i < heap.degree( u ) && heap.target( u, i ) == v &&
+                    i < offHeap.degree( u ) && offHeap.target( u, i ) == v;
+        }
+        System.out.println( "Generated " + edges + " edges over " + n +
+                " vertices from " + first + ": heap" +
+                (timing ? heapTime : "") + " and off-heap" +
+                (timing ? offHeapTime : "") +
+                (same ? " graphs match" : " graphs DIFFER") );
+        file.delete();
+    }
+    /** @return the next value of a linear congruential generator */
+    private static long nextRandom( long seed ) {
+        return (seed * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+    }
+
+    /** Time copying a graph into an adjacency list graph with
+     * addEdgeIfAbsent, which drops its parallel edges, and then asking
+     * hasEdge of every edge and of as many pairs that are mostly not
+     * edges, taking the best of a number of runs.
+     * @param graph to be copied
+     * @param indexed whether the copy has an edge index
+     * @param runs number of runs
+     */
+    private static void timeIndex( DGraph<Vertex,Object> graph,
+            boolean indexed, int runs ) {
+        int n = graph.size();
+        long bestAdd = Long.MAX_VALUE;
+        long bestFind = Long.MAX_VALUE;
+        int added = 0;
+        int found = 0;
+        int asked = 0;
+        for( int run = 0; run < runs; run++ ) {
+            DGraphAdj<Vertex,Object> copy =
+                new DGraphAdj<Vertex,Object>( indexed );
+            Vertex[] vertices = new Vertex[n];
+            for( int v = 0; v < n; v++ ) {
+                vertices[v] = new Vertex();
+                copy.addVertex( vertices[v] );
+            }
+            long start = System.nanoTime();
+            added = 0;
+            for( int u = 0; u < n; u++ ) {
+                for( int i = 0; i < graph.degree( u ); i++ ) {
+                    if( copy.addEdgeIfAbsent( vertices[u],
+                            vertices[graph.target( u, i )], null ) ) {
+                        added++;
+                    }
+                }
+            }
+            long middle = System.nanoTime();
+            found = 0;
+            asked = 0;
+            for( int u = 0; u < n; u++ ) {
+                for( int i = 0; i < graph.degree( u ); i++ ) {
+                    int v = graph.target( u, i );
+                    if( copy.hasEdge( vertices[u], vertices[v] ) ) {
+                        found++;
+                    }
+                    if( copy.hasEdge( vertices[u],
+                            vertices[(v + 1) % n] ) ) {
+                        found++;
+                    }
+                    asked += 2;
+                }
+            }
+            long end = System.nanoTime();
+            bestAdd = Math.min( bestAdd, middle - start );
+            bestFind = Math.min( bestFind, end - middle );
+        }
+        System.out.printf( "%s: %d edges added in %.1f ms, " +
+                "%d of %d pairs found in %.1f ms%n",
+                indexed ? "Edge index" : "List scan", added, bestAdd / 1e6,
+                found, asked, bestFind / 1e6 );
+    }
+
+    /** Load an edge list file and report its size, its strongly connected
+     * components and, optionally, the load throughput and its loops.
+     * Usage: java graphs.EdgeListLoader [-gedges] [-i] [-l] [-t]
+     *  [-ffirst] [-o[storefile]] edgefile
+     * <ul>
+     * <li>-g generates an edge list of the given number of edges in a
+     * temporary file, numbered from the first index, loads it both on
+     * and off the heap and checks that both graphs have the vertices and
+     * edges generated, before the edge file is loaded</li>
+     * <li>-i times addEdgeIfAbsent and hasEdge on adjacency list copies
+     * of the graph with and without an edge index</li>
+     * <li>-l reports the loop nesting forest of the graph entered at
+     * vertex 0</li>
+     * <li>-t reports the load throughput</li>
+     * <li>-f gives the index in the file of the first vertex, e.g., -f1
+     * for files that number their vertices from 1</li>
+     * <li>-o loads the graph off the heap, in direct memory or, if a
+     * store file is given, in that file, which is then opened again and
+     * the graph read from it</li>
+     * </ul>
+     */
+    public static void main( String[] args ) throws IOException {
+        long generate = 0;
+        boolean indexing = false;
+        boolean loops = false;
+        boolean timing = false;
+        boolean offHeap = false;
+        int first = 0;
+        File store = null;
+        int arg = 0;
+        while( arg < args.length - 1 && args[arg].startsWith( "-" ) ) {
+            if( args[arg].matches( "-g[0-9]{1,12}" ) ) {
+                generate = Long.parseLong( args[arg].substring( 2 ) );
+            } else if( args[arg].equals( "-i" ) ) {
+                indexing = true;
+            } else if( args[arg].equals( "-l" ) ) {
+                loops = true;
+            } else if( args[arg].equals( "-t" ) ) {
+                timing = true;
+            } else if( args[arg].matches( "-f[0-9]+" ) ) {
+                first = Integer.parseInt( args[arg].substring( 2 ) );
+            } else if( args[arg].startsWith( "-o" ) ) {
+                offHeap = true;
+                if( args[arg].length() > 2 ) {
+                    store = new File( args[arg].substring( 2 ) );
+                }
+            } else {
+                break;
+            }
+            arg++;
+        }
+        if( arg != args.length - 1 ) {
+            System.out.println( "Usage: java graphs.EdgeListLoader " +
+                    "[-gedges] [-i] [-l] [-t] [-ffirst] [-o[storefile]] " +
+                    "edgefile" );
+            System.exit( 1 );
+        }
+        GraphIO.VertexFactory<Vertex> factory =
+            new GraphIO.VertexFactory<Vertex>() {
+                public Vertex newVertex() {
+                    return new Vertex();
+                }
+            };
+        EdgeListLoader<Vertex> loader = new EdgeListLoader<Vertex>( factory );
+        loader.setFirstIndex( first );
+        File file = new File( args[arg] );
+        DGraph<Vertex,Object> graph;
+        int edges;
+        try {
+            if( generate > 0 ) {
+                checkGenerated( loader, generate, timing );
+            }
+            if( !offHeap ) {
+                DGraphCsr<Vertex,Object> csr = loader.load( file );
+                edges = csr.edgeCount();
+                graph = csr;
+            } else {
+                DGraphOffHeap<Vertex,Object> loaded =
+                    loader.loadOffHeap( file, store );
+                if( store != null ) {
+                    loaded = DGraphOffHeap.open( store, factory,
+                            loaded.getLabels() );
+                }
+                edges = loaded.edgeCount();
+                graph = loaded;
+            }
+        } catch( IOException e ) {
+            System.out.println( file + ": " + e.getMessage() );
+            System.exit( 1 );
+            return;
+        }
+        System.out.println( "Vertices: " + graph.size() +
+                " Edges: " + edges );
+        if( timing ) {
+            System.out.printf( "Loaded %.1f MB in %d ms (%.1f MB/s)%n",
+                    loader.getBytesLoaded() / 1e6,
+                    loader.getElapsed() / 1000000, loader.getThroughput() );
+        }
+        StronglyConnectedComponents scc =
+            new StronglyConnectedComponents( graph );
+        System.out.println( "Strongly connected components: " +
+                scc.count() );
+        int[] sizes = new int[scc.count()];
+        for( int c = 0; c < sizes.length; c++ ) {
+            sizes[c] = scc.size( c );
+        }
+        Arrays.sort( sizes );
+        System.out.print( "Largest:" );
+        for( int i = sizes.length - 1; i >= 0 && i >= sizes.length - 10;
+                i-- ) {
+            System.out.print( " " + sizes[i] );
+        }
+        System.out.println();
+        if( indexing ) {
+            timeIndex( graph, false, 5 );
+            timeIndex( graph, true, 5 );
+        }
+        if( loops && graph.size() > 0 ) {
+            LoopNestingForest forest =
+                new LoopNestingForest( graph, new Dominators( graph, 0 ) );
+            System.out.println( "Loops: " + forest.count() );
+            for( int l = 0; l < forest.count(); l++ ) {
+                System.out.println( "Header " + forest.header( l ) +
+                        " depth " + forest.depth( l ) + " body " +
+                        Arrays.toString( forest.body( l ) ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package graphs;
+
+/** A set of edges, each identified by the indices of its source and
+ * target vertices, used to index the edges of a graph so that membership
+ * can be checked in constant expected time.
+ * The pair (u,v) is packed into a single long key and stored in an
+ * open-addressing hash table with linear probing. It may also be used on
+ * its own to record a subset of the edges of a graph.
+ */
+public class EdgeSet {
+    /** Marks an empty slot; no packed pair of non-negative indices
+     * can equal it */
+    private static final long EMPTY = -1L;
+    /** Initial capacity; must be a power of two */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    /** Number of edges in the set */
+    private int count;
+
+    /** Construct an empty set of edges */
+    public EdgeSet() {
+        super();
+        keys = newTable( INITIAL_CAPACITY );
+    }
+    /** @return the number of edges in the set */
+    public int size() {
+        return count;
+    }
+    /** @return true if and only if the edge from u to v is in the set */
+    public boolean contains( int u, int v ) {
+        long key = pack( u, v );
+        int mask = keys.length - 1;
+        for( int i = hash( key ) & mask; keys[i] != EMPTY; 
+                i = (i + 1) & mask ) {
+            if( keys[i] == key ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /** Add the edge from u to v to the set
+     * @return true if and only if the edge was not already in the set */
+    public boolean add( int u, int v ) {
+        if( 2 * (count + 1) > keys.length ) {
+            resize( 2 * keys.length );
+        }
+        if( insert( keys, pack( u, v ) ) ) {
+            count++;
+            return true;
+        }
+        return false;
+    }
+    /** Insert a key into a table with at least one empty slot
+     * @return true if and only if the key was not already in the table */
+    private static boolean insert( long[] table, long key ) {
+        int mask = table.length - 1;
+        int i = hash( key ) & mask;
+        while( table[i] != EMPTY ) {
+            if( table[i] == key ) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+        return true;
+    }
+    private void resize( int capacity ) {
+        long[] table = newTable( capacity );
+        for( long key : keys ) {
+            if( key != EMPTY ) {
+                insert( table, key );
+            }
+        }
+        keys = table;
+    }
+    private static long[] newTable( int capacity ) {
+        long[] table = new long[capacity];
+        java.util.Arrays.fill( table, EMPTY );
+        return table;
+    }
+    private static long pack( int u, int v ) {
+        return ((long)u << 32) | (v & 0xffffffffL);
+    }
+    /** Mix the bits of the key so that consecutive vertex indices do not
+     * produce long runs of occupied slots */
+    private static int hash( long key ) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int)(key ^ (key >>> 32));
+    }
+}
@@ -36,6 +36,15 @@ public interface Graph<V extends Vertex, E> extends Iterable<V>{
      * @requires both u and v are already vertices of the graph
      */
     public void addEdge( V u, V v, E e );
+
+    /** Add an edge to the graph unless it already has an edge from u to v
+     * @param u source vertex
+     * @param v target vertex
+     * @param e edge information
+     * @requires both u and v are already vertices of the graph
+     * @return true if and only if the edge was added
+     */
+    public boolean addEdgeIfAbsent( V u, V v, E e );
     
     /** Check is an edge exits from u to v
      * @param u source vertex
@@ -49,5 +58,31 @@ public interface Graph<V extends Vertex, E> extends Iterable<V>{
     
     /** @return iterator over the list of vertices adjacent to vertex v */
     public Iterable<AdjacentEdge<V,E>> adjacent( V v );
+
+    /* The following methods give allocation-free access to the graph
+     * by vertex index, where vertices are numbered 0 .. size()-1 and the
+     * edges leaving each vertex are numbered 0 .. degree(v)-1 in the same
+     * order as they are returned by adjacent. */
+
+    /** @return the index of vertex v
+     * @requires v is a vertex of the graph */
+    public int index( V v );
+
+    /** @return the vertex with index v
+     * @requires 0 <= v < size() */
+    public V vertex( int v );
+
+    /** @return the number of edges leaving the vertex with index v */
+    public int degree( int v );
+
+    /** @return the index of the target of the i-th edge leaving the
+     *  vertex with index v
+     * @requires 0 <= i < degree(v) */
+    public int target( int v, int i );
+
+    /** @return the edge information of the i-th edge leaving the
+     *  vertex with index v
+     * @requires 0 <= i < degree(v) */
+    public E label( int v, int i );
     
 }
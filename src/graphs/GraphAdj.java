@@ -1,7 +1,6 @@
 package graphs;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Iterator;
 
@@ -20,6 +19,9 @@ abstract class GraphAdj<V extends Vertex,E>
      * each of which contains a vertex and a list of adjacent edges.
      */
     protected List<VEntry> graph;
+    /** Optional index of the edges by source and target, which makes
+     * hasEdge constant time; null if the edges are not indexed. */
+    protected EdgeSet edgeIndex;
     
     protected class VEntry {
         V source;
@@ -28,7 +30,8 @@ abstract class GraphAdj<V extends Vertex,E>
         VEntry( V v ) {
             super();
             this.source = v;
-            this.edges = new LinkedList<AdjacentEdge<V,E>>();
+            // Array lists allow the i-th edge to be accessed directly
+            this.edges = new ArrayList<AdjacentEdge<V,E>>();
         }
     }
     /** Constructor for an empty graph */
@@ -37,6 +40,16 @@ abstract class GraphAdj<V extends Vertex,E>
         // Array implementation to allow efficient lookup of vertices
         graph = new ArrayList<VEntry>();
     }
+    /** Constructor for an empty graph
+     * @param indexEdges whether to maintain an edge index so that
+     *  hasEdge and addEdgeIfAbsent take constant expected time
+     */
+    public GraphAdj( boolean indexEdges ) {
+        this();
+        if( indexEdges ) {
+            edgeIndex = new EdgeSet();
+        }
+    }
     /** @return the number of vertices in the graph */
     public int size() {
         return graph.size();
@@ -65,6 +78,21 @@ abstract class GraphAdj<V extends Vertex,E>
      * @requires both u and v are already vertices of the graph
      */
     public abstract void addEdge( V u, V v, E e );
+
+    /** Add an edge to the graph unless it already has an edge from u to v
+     * @param u source vertex
+     * @param v target vertex
+     * @param e edge information
+     * @requires both u and v are already vertices of the graph
+     * @return true if and only if the edge was added
+     */
+    public boolean addEdgeIfAbsent( V u, V v, E e ) {
+        if( hasEdge( u, v ) ) {
+            return false;
+        }
+        addEdge( u, v, e );
+        return true;
+    }
     
     /** Check is graph has an edge from u to v
      * @param u source vertex
@@ -73,7 +101,10 @@ abstract class GraphAdj<V extends Vertex,E>
      * @return true if and only if the graph has an edge from u to v
      */
     public boolean hasEdge( V u, V v ) {
-        assert hasVertex(u) && hasVertex(u);
+        assert hasVertex(u) && hasVertex(v);
+        if( edgeIndex != null ) {
+            return edgeIndex.contains( u.getIndex(), v.getIndex() );
+        }
         // Search the edges adjacent to u for vertex v
         for( AdjacentEdge<V,E> e : adjacent( u )  ) {
             if( e.target == v ) {
@@ -95,6 +126,27 @@ abstract class GraphAdj<V extends Vertex,E>
     public Iterable<AdjacentEdge<V,E>> adjacent( V u ) {
         return graph.get(u.getIndex()).edges;
     }
+    /** @return the index of vertex v */
+    public int index( V v ) {
+        assert hasVertex(v);
+        return v.getIndex();
+    }
+    /** @return the vertex with index v */
+    public V vertex( int v ) {
+        return graph.get(v).source;
+    }
+    /** @return the number of edges leaving the vertex with index v */
+    public int degree( int v ) {
+        return graph.get(v).edges.size();
+    }
+    /** @return the index of the target of the i-th edge leaving v */
+    public int target( int v, int i ) {
+        return graph.get(v).edges.get(i).target.getIndex();
+    }
+    /** @return the edge information of the i-th edge leaving v */
+    public E label( int v, int i ) {
+        return graph.get(v).edges.get(i).edgeInfo;
+    }
     /** The iterator over vertices uses the list iterator over the entries
      *  in the graph and selects the vertex from the entry.
      */
@@ -0,0 +1,155 @@
+package graphs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Compact, versioned binary format for directed graphs.
+ * A graph is written as
+ * <pre>
+ *   magic version vertexCount labelCount label* (degree (target labelId)*)*
+ * </pre>
+ * where all counts, vertex indices and label identifiers are unsigned
+ * variable-length integers (7 bits per byte, low bits first).
+ * Each distinct edge information object is written once to the label
+ * table by a LabelCodec and edges refer to it by identifier, with 0
+ * standing for no edge information and i+1 for the i-th label.
+ * Reading streams through the input once and builds an adjacency-list
+ * graph that can then be frozen.
+ */
+public final class GraphIO {
+
+    /** Identifies the start of a graph: "DGRF" */
+    private static final int MAGIC = 0x44475246;
+    /** Current version of the format */
+    public static final int VERSION = 1;
+
+    /** Writes and reads the edge information of a graph */
+    public interface LabelCodec<E> {
+        /** Write edge information e, which is not null */
+        public void write( DataOutput out, E e ) throws IOException;
+        /** @return edge information read from in */
+        public E read( DataInput in ) throws IOException;
+    }
+
+    /** Creates the vertices of a graph being read */
+    public interface VertexFactory<V extends Vertex> {
+        /** @return a new vertex, not yet in any graph */
+        public V newVertex();
+    }
+
+    /** The class only provides static methods */
+    private GraphIO() {
+        super();
+    }
+
+    /** Write a graph
+     * @param out stream to write to
+     * @param graph to be written
+     * @param codec for the edge information
+     */
+    public static <V extends Vertex, E> void write( DataOutput out,
+            DGraph<V,E> graph, LabelCodec<E> codec ) throws IOException {
+        int n = graph.size();
+        // Number the distinct edge information objects
+        List<E> labels = new ArrayList<E>();
+        Map<E, Integer> ids = new IdentityHashMap<E, Integer>();
+        for( int v = 0; v < n; v++ ) {
+            for( int i = 0; i < graph.degree( v ); i++ ) {
+                E e = graph.label( v, i );
+                if( e != null && !ids.containsKey( e ) ) {
+                    ids.put( e, labels.size() );
+                    labels.add( e );
+                }
+            }
+        }
+        out.writeInt( MAGIC );
+        writeVarint( out, VERSION );
+        writeVarint( out, n );
+        writeVarint( out, labels.size() );
+        for( E e : labels ) {
+            codec.write( out, e );
+        }
+        for( int v = 0; v < n; v++ ) {
+            writeVarint( out, graph.degree( v ) );
+            for( int i = 0; i < graph.degree( v ); i++ ) {
+                E e = graph.label( v, i );
+                writeVarint( out, graph.target( v, i ) );
+                writeVarint( out, e == null ? 0 : ids.get( e ) + 1 );
+            }
+        }
+    }
+    /** Read a graph
+     * @param in stream to read from
+     * @param factory creates the vertices, which are numbered in order
+     * @param codec for the edge information
+     * @return the graph read
+     * @throws IOException if the input is not a graph in a supported
+     *  version of the format
+     */
+    public static <V extends Vertex, E> DGraphAdj<V,E> read( DataInput in,
+            VertexFactory<V> factory, LabelCodec<E> codec )
+            throws IOException {
+        if( in.readInt() != MAGIC ) {
+            throw new IOException( "Not a graph file" );
+        }
+        int version = readVarint( in );
+        if( version != VERSION ) {
+            throw new IOException( "Unsupported graph format version " +
+                    version );
+        }
+        int n = readVarint( in );
+        int labelCount = readVarint( in );
+        List<E> labels = new ArrayList<E>( labelCount );
+        for( int i = 0; i < labelCount; i++ ) {
+            labels.add( codec.read( in ) );
+        }
+        DGraphAdj<V,E> graph = new DGraphAdj<V,E>();
+        for( int v = 0; v < n; v++ ) {
+            graph.addVertex( factory.newVertex() );
+        }
+        for( int v = 0; v < n; v++ ) {
+            int degree = readVarint( in );
+            for( int i = 0; i < degree; i++ ) {
+                int target = readVarint( in );
+                int label = readVarint( in );
+                if( target >= n || label > labelCount ) {
+                    throw new IOException( "Corrupt graph file" );
+                }
+                graph.addEdge( graph.vertex( v ), graph.vertex( target ),
+                        label == 0 ? null : labels.get( label - 1 ) );
+            }
+        }
+        return graph;
+    }
+
+    /** Write a non-negative int as a variable-length integer */
+    public static void writeVarint( DataOutput out, int value )
+            throws IOException {
+        assert value >= 0;
+        while( (value & ~0x7f) != 0 ) {
+            out.writeByte( (value & 0x7f) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( value );
+    }
+    /** @return a non-negative int read as a variable-length integer */
+    public static int readVarint( DataInput in ) throws IOException {
+        int value = 0;
+        for( int shift = 0; shift < 35; shift += 7 ) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if( (b & 0x80) == 0 ) {
+                if( value < 0 ) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException( "Malformed variable-length integer" );
+    }
+}
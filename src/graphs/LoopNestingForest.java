@@ -0,0 +1,219 @@
+package graphs;
+
+/** The loop nesting forest of a directed graph.
+ * A back edge is an edge u -> h whose target h dominates its source u;
+ * h is then the header of a natural loop whose body is h together with
+ * every vertex that can reach u without passing through h.
+ * Loops with the same header are combined. Two loops are either disjoint
+ * or one is nested inside the other, giving a forest.
+ * Edges that close a cycle without their target dominating their source
+ * (irreducible control flow) do not form loops; flow graphs built from
+ * structured programs never contain them.
+ * Loops are numbered so that every loop is numbered before any loop that
+ * encloses it, i.e., inner loops come first.
+ * The forest is calculated in near-linear time by processing headers from
+ * the innermost outwards and collapsing each completed loop onto its header
+ * with a union-find structure.
+ */
+public class LoopNestingForest {
+
+    /** Header vertex of each loop */
+    private final int[] header;
+    /** Immediately enclosing loop of each loop, or -1 */
+    private final int[] parent;
+    /** Nesting depth of each loop; outermost loops have depth 1 */
+    private final int[] loopDepth;
+    /** Innermost loop containing each vertex, or -1 */
+    private final int[] loopOf;
+    /** Number of loops */
+    private final int count;
+
+    /** Calculate the loop nesting forest of a graph
+     * @param graph directed graph
+     * @param dominators dominator tree of graph
+     */
+    public LoopNestingForest( DGraph<?,?> graph, Dominators dominators ) {
+        super();
+        int n = graph.size();
+        // Find the headers: targets of back edges
+        boolean[] isHeader = new boolean[n];
+        int headerCount = 0;
+        for( int u = 0; u < n; u++ ) {
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                int h = graph.target( u, i );
+                if( !isHeader[h] && dominators.dominates( h, u ) ) {
+                    isHeader[h] = true;
+                    headerCount++;
+                }
+            }
+        }
+        // Process the headers deepest in the dominator tree first, which
+        // ensures inner loops are complete before the loops enclosing them.
+        int[] headers = new int[headerCount];
+        int k = 0;
+        for( int h = 0; h < n; h++ ) {
+            if( isHeader[h] ) {
+                headers[k++] = h;
+            }
+        }
+        headers = sortByDepth( headers, dominators, n );
+        header = new int[headerCount];
+        parent = new int[headerCount];
+        loopDepth = new int[headerCount];
+        loopOf = new int[n];
+        java.util.Arrays.fill( loopOf, -1 );
+        java.util.Arrays.fill( parent, -1 );
+        // Union-find over loops: outer[l] leads to the outermost loop
+        // found so far that encloses loop l
+        int[] outer = new int[headerCount];
+        // Loop whose body walk has pushed each vertex; a vertex is marked
+        // when pushed, so it is on the stack at most once per loop
+        int[] mark = new int[n];
+        java.util.Arrays.fill( mark, -1 );
+        int[] work = new int[n];
+        for( int l = 0; l < headerCount; l++ ) {
+            int h = headers[l];
+            header[l] = h;
+            outer[l] = l;
+            loopOf[h] = l;
+            mark[h] = l;
+            int sp = 0;
+            // Start from the sources of the back edges into h
+            for( int i = 0; i < dominators.predecessorCount( h ); i++ ) {
+                int u = dominators.predecessor( h, i );
+                if( u != h && dominators.dominates( h, u ) ) {
+                    sp = push( u, l, work, sp, mark, outer );
+                }
+            }
+            while( sp > 0 ) {
+                int x = work[--sp];
+                if( loopOf[x] == -1 ) {
+                    loopOf[x] = l;
+                }
+                for( int i = 0; i < dominators.predecessorCount( x ); i++ ) {
+                    int p = dominators.predecessor( x, i );
+                    if( dominators.isReachable( p ) ) {
+                        sp = push( p, l, work, sp, mark, outer );
+                    }
+                }
+            }
+        }
+        count = headerCount;
+        // Outer loops are numbered after the loops they enclose
+        for( int l = count - 1; l >= 0; l-- ) {
+            loopDepth[l] = parent[l] == -1 ? 1 : loopDepth[parent[l]] + 1;
+        }
+    }
+    /** Push vertex x onto the body walk of loop l, unless the walk has
+     * already pushed it. A vertex already in a loop is replaced by the
+     * header of the outermost loop containing it found so far, which is
+     * then nested in l, so that completed inner loops are skipped.
+     * @return the new stack size
+     */
+    private int push( int x, int l, int[] work, int sp, int[] mark,
+            int[] outer ) {
+        if( loopOf[x] != -1 ) {
+            int inner = find( outer, loopOf[x] );
+            if( inner != l ) {
+                parent[inner] = l;
+                outer[inner] = l;
+            }
+            x = header[inner];
+        }
+        if( mark[x] == l ) {
+            return sp;
+        }
+        mark[x] = l;
+        work[sp++] = x;
+        return sp;
+    }
+    /** @return the outermost loop found so far enclosing loop l,
+     * compressing the path as it goes */
+    private static int find( int[] outer, int l ) {
+        int root = l;
+        while( outer[root] != root ) {
+            root = outer[root];
+        }
+        while( outer[l] != root ) {
+            int next = outer[l];
+            outer[l] = root;
+            l = next;
+        }
+        return root;
+    }
+    /** Sort vertices into decreasing order of dominator tree depth with
+     * a counting sort */
+    private static int[] sortByDepth( int[] vertices, Dominators dominators,
+            int n ) {
+        int[] start = new int[n + 1];
+        for( int v : vertices ) {
+            start[n - 1 - dominators.depth( v ) + 1]++;
+        }
+        for( int d = 0; d < n; d++ ) {
+            start[d + 1] += start[d];
+        }
+        int[] sorted = new int[vertices.length];
+        for( int v : vertices ) {
+            sorted[start[n - 1 - dominators.depth( v )]++] = v;
+        }
+        return sorted;
+    }
+
+    /** @return the number of loops */
+    public int count() {
+        return count;
+    }
+    /** @return the header vertex of loop l */
+    public int header( int l ) {
+        return header[l];
+    }
+    /** @return the loop immediately enclosing loop l, or -1 if l is
+     *  outermost */
+    public int parent( int l ) {
+        return parent[l];
+    }
+    /** @return the nesting depth of loop l; outermost loops have depth 1 */
+    public int depth( int l ) {
+        return loopDepth[l];
+    }
+    /** @return the innermost loop containing vertex v, or -1 if v is not
+     *  in any loop */
+    public int loopOf( int v ) {
+        return loopOf[v];
+    }
+    /** @return the number of loops containing vertex v */
+    public int nestingDepth( int v ) {
+        return loopOf[v] == -1 ? 0 : loopDepth[loopOf[v]];
+    }
+    /** @return true if and only if vertex v is the header of a loop */
+    public boolean isHeader( int v ) {
+        return loopOf[v] != -1 && header[loopOf[v]] == v;
+    }
+    /** @return true if and only if vertex v is in the body of loop l,
+     *  including nested loops */
+    public boolean contains( int l, int v ) {
+        int m = loopOf[v];
+        while( m != -1 && loopDepth[m] > loopDepth[l] ) {
+            m = parent[m];
+        }
+        return m == l;
+    }
+    /** @return the vertices in the body of loop l, including those of
+     *  nested loops, in increasing index order */
+    public int[] body( int l ) {
+        int size = 0;
+        for( int v = 0; v < loopOf.length; v++ ) {
+            if( contains( l, v ) ) {
+                size++;
+            }
+        }
+        int[] body = new int[size];
+        int k = 0;
+        for( int v = 0; v < loopOf.length; v++ ) {
+            if( contains( l, v ) ) {
+                body[k++] = v;
+            }
+        }
+        return body;
+    }
+}
@@ -0,0 +1,34 @@
+package graphs;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Iterator over the positions start .. end-1 of an array-based graph
+ * representation, returning the element associated with each position.
+ */
+abstract class Range<T> implements Iterator<T> {
+    private int next;
+    private final int end;
+
+    Range( int start, int end ) {
+        super();
+        this.next = start;
+        this.end = end;
+    }
+    /** @return the element at position i */
+    abstract T get( int i );
+
+    public boolean hasNext() {
+        return next < end;
+    }
+    public T next() {
+        if( next >= end ) {
+            throw new NoSuchElementException();
+        }
+        return get( next++ );
+    }
+    /** Array-based graphs are immutable so removal is not supported */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
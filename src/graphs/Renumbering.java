@@ -0,0 +1,224 @@
+package graphs;
+
+import java.util.Arrays;
+
+/** Renumbering of the vertices of a directed graph to improve locality.
+ * Vertex indices normally reflect the order in which vertices were
+ * created, which may place vertices that are adjacent in the graph far
+ * apart in memory and in any per-vertex arrays indexed by vertex.
+ * A renumbering is a permutation giving the new index of each vertex,
+ * indexed by its old index; permute builds a copy of the graph with the
+ * vertices numbered accordingly.
+ */
+public final class Renumbering {
+
+    /** Orderings of the vertices */
+    public enum Order {
+        /** Reverse postorder of a depth first search from the entry, so
+         * that vertices mostly come before their successors */
+        REVERSE_POSTORDER,
+        /** Breadth first order from the entry, so that successors of a
+         * vertex are numbered close together */
+        BREADTH_FIRST,
+        /** Reverse Cuthill-McKee order of the graph with edge directions
+         * ignored, which keeps the endpoints of each edge close together */
+        REVERSE_CUTHILL_MCKEE
+    }
+
+    /** The class only provides static methods */
+    private Renumbering() {
+        super();
+    }
+
+    /** Calculate a renumbering of a graph
+     * @param graph to be renumbered
+     * @param entry index of the entry vertex, where the ordering needs one
+     * @param order ordering to use
+     * @return the new index of each vertex, indexed by its old index.
+     *  Vertices not reached from the entry are numbered last, in order of
+     *  their old index.
+     */
+    public static int[] renumbering( DGraph<?,?> graph, int entry,
+            Order order ) {
+        switch( order ) {
+        case REVERSE_POSTORDER:
+            return complete( Traversals.reversePostorder( graph, entry ) );
+        case BREADTH_FIRST:
+            return complete( breadthFirst( graph, entry ) );
+        case REVERSE_CUTHILL_MCKEE:
+            return reverseCuthillMcKee( graph );
+        default:
+            throw new IllegalArgumentException( "Unknown order " + order );
+        }
+    }
+    /** Construct a copy of a graph with renumbered vertices. The copy
+     * shares the vertices and edge information of the original; the edges
+     * leaving each vertex keep their order.
+     * @param graph to be copied
+     * @param newIndex new index of each vertex, indexed by its old index
+     * @return the renumbered copy
+     */
+    public static <V extends Vertex, E> DGraphCsr<V,E> permute(
+            DGraph<V,E> graph, int[] newIndex ) {
+        assert isPermutation( newIndex ) && newIndex.length == graph.size();
+        return new DGraphCsr<V,E>( graph, newIndex );
+    }
+    /** @return the inverse of a renumbering, i.e., the old index of each
+     *  vertex, indexed by its new index */
+    public static int[] inverse( int[] newIndex ) {
+        int[] oldIndex = new int[newIndex.length];
+        for( int v = 0; v < newIndex.length; v++ ) {
+            oldIndex[newIndex[v]] = v;
+        }
+        return oldIndex;
+    }
+
+    /** @return the mean distance between the indices of the source and
+     *  target of an edge, which is small when the edges of a graph touch
+     *  nearby entries of arrays indexed by vertex */
+    public static double meanEdgeSpan( DGraph<?,?> graph ) {
+        long edges = 0;
+        long span = 0;
+        for( int u = 0; u < graph.size(); u++ ) {
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                span += Math.abs( graph.target( u, i ) - u );
+                edges++;
+            }
+        }
+        return edges == 0 ? 0 : (double)span / edges;
+    }
+
+    /** @return the breadth first numbering of the vertices reachable
+     *  from entry, -1 for the rest */
+    private static int[] breadthFirst( DGraph<?,?> graph, int entry ) {
+        int[] number = new int[graph.size()];
+        Arrays.fill( number, -1 );
+        int[] queue = new int[graph.size()];
+        int head = 0, tail = 0;
+        queue[tail++] = entry;
+        number[entry] = 0;
+        while( head < tail ) {
+            int u = queue[head++];
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                int w = graph.target( u, i );
+                if( number[w] == -1 ) {
+                    number[w] = tail;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return number;
+    }
+    /** Reverse Cuthill-McKee ordering. Each connected component of the
+     * undirected graph is searched breadth first from a vertex of minimum
+     * degree, visiting the unnumbered neighbours of each vertex in order of
+     * increasing degree; the resulting order is then reversed.
+     * @return the new index of each vertex
+     */
+    private static int[] reverseCuthillMcKee( DGraph<?,?> graph ) {
+        int n = graph.size();
+        // Undirected adjacency lists: successors followed by predecessors
+        int[] start = new int[n + 1];
+        for( int u = 0; u < n; u++ ) {
+            start[u + 1] += graph.degree( u );
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                start[graph.target( u, i ) + 1]++;
+            }
+        }
+        for( int u = 0; u < n; u++ ) {
+            start[u + 1] += start[u];
+        }
+        int[] neighbours = new int[start[n]];
+        int[] next = Arrays.copyOf( start, n );
+        for( int u = 0; u < n; u++ ) {
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                int w = graph.target( u, i );
+                neighbours[next[u]++] = w;
+                neighbours[next[w]++] = u;
+            }
+        }
+        // Candidate start vertices in order of increasing degree
+        int[] byDegree = sortByDegree( allVertices( n ), start );
+        int[] order = new int[n];
+        boolean[] seen = new boolean[n];
+        int tail = 0;
+        for( int s : byDegree ) {
+            if( seen[s] ) {
+                continue;
+            }
+            int head = tail;
+            order[tail++] = s;
+            seen[s] = true;
+            while( head < tail ) {
+                int u = order[head++];
+                int first = tail;
+                for( int k = start[u]; k < start[u + 1]; k++ ) {
+                    int w = neighbours[k];
+                    if( !seen[w] ) {
+                        seen[w] = true;
+                        order[tail++] = w;
+                    }
+                }
+                // Newly found neighbours are taken by increasing degree
+                int[] sorted = sortByDegree(
+                        Arrays.copyOfRange( order, first, tail ), start );
+                System.arraycopy( sorted, 0, order, first, sorted.length );
+            }
+        }
+        int[] newIndex = new int[n];
+        for( int k = 0; k < n; k++ ) {
+            newIndex[order[k]] = n - 1 - k;
+        }
+        return newIndex;
+    }
+    /** @return the vertices sorted by increasing undirected degree, with
+     *  ties broken by index */
+    private static int[] sortByDegree( int[] vertices, int[] start ) {
+        long[] keys = new long[vertices.length];
+        for( int i = 0; i < vertices.length; i++ ) {
+            int v = vertices[i];
+            keys[i] = ((long)(start[v + 1] - start[v]) << 32) | v;
+        }
+        Arrays.sort( keys );
+        int[] sorted = new int[vertices.length];
+        for( int i = 0; i < keys.length; i++ ) {
+            sorted[i] = (int)keys[i];
+        }
+        return sorted;
+    }
+    /** @return the vertex indices 0 .. n-1 */
+    private static int[] allVertices( int n ) {
+        int[] all = new int[n];
+        for( int v = 0; v < n; v++ ) {
+            all[v] = v;
+        }
+        return all;
+    }
+    /** Extend a numbering of some of the vertices to all of them by
+     * numbering the unnumbered vertices (-1) last, in index order */
+    private static int[] complete( int[] number ) {
+        int next = 0;
+        for( int k : number ) {
+            if( k != -1 ) {
+                next++;
+            }
+        }
+        for( int v = 0; v < number.length; v++ ) {
+            if( number[v] == -1 ) {
+                number[v] = next++;
+            }
+        }
+        return number;
+    }
+    /** @return true if and only if a is a permutation of 0 .. a.length-1 */
+    private static boolean isPermutation( int[] a ) {
+        boolean[] seen = new boolean[a.length];
+        for( int k : a ) {
+            if( k < 0 || k >= a.length || seen[k] ) {
+                return false;
+            }
+            seen[k] = true;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,209 @@
+package graphs;
+
+/** The strongly connected components of a directed graph, together with
+ * the condensation of the graph, which has a vertex for each component and
+ * an edge between two components if there is an edge between members of
+ * them in the original graph.
+ * The components are found using Tarjan's algorithm in O(V+E) time.
+ * The depth first search uses explicit stacks held in int arrays, so it
+ * works on arbitrarily deep graphs.
+ * Components are numbered 0 .. count()-1 in a topological order of the
+ * condensation, i.e., every edge of the condensation goes from a lower
+ * numbered component to a higher numbered one, so the component containing
+ * a graph's entry vertex is numbered before everything reachable from it.
+ */
+public class StronglyConnectedComponents {
+
+    /** Component of each vertex, indexed by vertex index */
+    private final int[] component;
+    /** Number of components */
+    private final int count;
+    /** The members of component c are held at positions
+     * memberOffsets[c] .. memberOffsets[c+1]-1 of members */
+    private final int[] memberOffsets, members;
+    /** The successors of component c in the condensation are held at
+     * positions dagOffsets[c] .. dagOffsets[c+1]-1 of dagTargets */
+    private final int[] dagOffsets, dagTargets;
+    /** Whether each component contains a cycle, i.e., has more than
+     * one member or a vertex with an edge to itself */
+    private final boolean[] cyclic;
+
+    /** Calculate the strongly connected components of a graph
+     * @param graph directed graph to be decomposed
+     */
+    public StronglyConnectedComponents( DGraph<?,?> graph ) {
+        super();
+        int n = graph.size();
+        component = new int[n];
+        count = tarjan( graph );
+        // Group the vertices by component with a counting sort
+        memberOffsets = new int[count + 1];
+        for( int v = 0; v < n; v++ ) {
+            memberOffsets[component[v] + 1]++;
+        }
+        for( int c = 0; c < count; c++ ) {
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        members = new int[n];
+        int[] next = memberOffsets.clone();
+        for( int v = 0; v < n; v++ ) {
+            members[next[component[v]]++] = v;
+        }
+        // Build the condensation, ignoring duplicate edges between the
+        // same pair of components by marking the successors seen so far.
+        cyclic = new boolean[count];
+        dagOffsets = new int[count + 1];
+        int[] seen = new int[count];
+        java.util.Arrays.fill( seen, -1 );
+        for( int c = 0; c < count; c++ ) {
+            cyclic[c] = size( c ) > 1;
+            for( int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++ ) {
+                int u = members[k];
+                for( int i = 0; i < graph.degree( u ); i++ ) {
+                    int w = graph.target( u, i );
+                    int d = component[w];
+                    if( d == c ) {
+                        cyclic[c] |= (w == u);
+                    } else if( seen[d] != c ) {
+                        seen[d] = c;
+                        dagOffsets[c + 1]++;
+                    }
+                }
+            }
+        }
+        for( int c = 0; c < count; c++ ) {
+            dagOffsets[c + 1] += dagOffsets[c];
+        }
+        dagTargets = new int[dagOffsets[count]];
+        java.util.Arrays.fill( seen, -1 );
+        for( int c = 0; c < count; c++ ) {
+            int j = dagOffsets[c];
+            for( int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++ ) {
+                int u = members[k];
+                for( int i = 0; i < graph.degree( u ); i++ ) {
+                    int d = component[graph.target( u, i )];
+                    if( d != c && seen[d] != c ) {
+                        seen[d] = c;
+                        dagTargets[j++] = d;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Tarjan's algorithm with the recursion replaced by an explicit call
+     * stack of (vertex, next edge) pairs. Fills in component.
+     * @return the number of components
+     */
+    private int tarjan( DGraph<?,?> graph ) {
+        int n = graph.size();
+        int[] index = new int[n];    // DFS discovery number, or -1
+        int[] low = new int[n];      // lowest discovery number reachable
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];    // Tarjan's stack of open vertices
+        int sp = 0;
+        int[] callVertex = new int[n];
+        int[] callEdge = new int[n];
+        int top;
+        int counter = 0;
+        int found = 0;              // components completed so far
+        java.util.Arrays.fill( index, -1 );
+        for( int s = 0; s < n; s++ ) {
+            if( index[s] != -1 ) {
+                continue;
+            }
+            top = 0;
+            callVertex[0] = s;
+            callEdge[0] = 0;
+            index[s] = low[s] = counter++;
+            stack[sp++] = s;
+            onStack[s] = true;
+            while( top >= 0 ) {
+                int v = callVertex[top];
+                int i = callEdge[top];
+                if( i < graph.degree( v ) ) {
+                    callEdge[top]++;
+                    int w = graph.target( v, i );
+                    if( index[w] == -1 ) {
+                        // Descend to w
+                        top++;
+                        callVertex[top] = w;
+                        callEdge[top] = 0;
+                        index[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                    } else if( onStack[w] && index[w] < low[v] ) {
+                        low[v] = index[w];
+                    }
+                } else {
+                    // All edges of v done: return to its caller
+                    top--;
+                    if( low[v] == index[v] ) {
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            component[w] = found;
+                        } while( w != v );
+                        found++;
+                    }
+                    if( top >= 0 && low[v] < low[callVertex[top]] ) {
+                        low[callVertex[top]] = low[v];
+                    }
+                }
+            }
+        }
+        // Tarjan completes components in reverse topological order
+        for( int v = 0; v < n; v++ ) {
+            component[v] = found - 1 - component[v];
+        }
+        return found;
+    }
+
+    /** @return the number of strongly connected components */
+    public int count() {
+        return count;
+    }
+    /** @return the component containing the vertex with index v */
+    public int component( int v ) {
+        return component[v];
+    }
+    /** @return the component of each vertex, indexed by vertex index.
+     * The array is shared and must not be modified. */
+    public int[] components() {
+        return component;
+    }
+    /** @return the number of vertices in component c */
+    public int size( int c ) {
+        return memberOffsets[c + 1] - memberOffsets[c];
+    }
+    /** @return the index of the i-th vertex of component c,
+     * where the members of a component are in increasing index order
+     * @requires 0 <= i < size(c) */
+    public int member( int c, int i ) {
+        return members[memberOffsets[c] + i];
+    }
+    /** @return true if and only if component c contains a cycle */
+    public boolean isCyclic( int c ) {
+        return cyclic[c];
+    }
+    /** @return the number of successors of component c in the
+     * condensation */
+    public int successorCount( int c ) {
+        return dagOffsets[c + 1] - dagOffsets[c];
+    }
+    /** @return the i-th successor of component c in the condensation
+     * @requires 0 <= i < successorCount(c) */
+    public int successor( int c, int i ) {
+        return dagTargets[dagOffsets[c] + i];
+    }
+    /** @return the components in a topological order of the condensation,
+     * which is simply 0 .. count()-1 */
+    public int[] topologicalOrder() {
+        int[] order = new int[count];
+        for( int c = 0; c < count; c++ ) {
+            order[c] = c;
+        }
+        return order;
+    }
+}
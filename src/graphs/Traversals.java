@@ -0,0 +1,153 @@
+package graphs;
+
+/** Traversal orders of directed graphs.
+ * All traversals use explicit stacks held in int arrays rather than
+ * recursion, so their running time and stack usage do not depend on the
+ * depth of the graph.
+ * Vertices are identified by their index in the graph and numberings are
+ * returned as int arrays indexed by vertex, with -1 for vertices that the
+ * traversal does not reach.
+ */
+public final class Traversals {
+
+    /** The class only provides static methods */
+    private Traversals() {
+        super();
+    }
+
+    /** @return the preorder numbering of the vertices reachable from entry
+     *  by depth first search */
+    public static int[] preorder( DGraph<?,?> graph, int entry ) {
+        int[] pre = newNumbering( graph.size() );
+        int[] post = newNumbering( graph.size() );
+        depthFirstSearch( graph, entry, pre, post );
+        return pre;
+    }
+    /** @return the postorder numbering of the vertices reachable from entry
+     *  by depth first search */
+    public static int[] postorder( DGraph<?,?> graph, int entry ) {
+        int[] pre = newNumbering( graph.size() );
+        int[] post = newNumbering( graph.size() );
+        depthFirstSearch( graph, entry, pre, post );
+        return post;
+    }
+    /** Reverse postorder places each vertex before its successors, other
+     * than along back edges, and so is the usual order for iterating a
+     * forward data flow analysis.
+     * @return the reverse postorder numbering of the vertices reachable
+     *  from entry, with entry numbered 0 */
+    public static int[] reversePostorder( DGraph<?,?> graph, int entry ) {
+        int[] pre = newNumbering( graph.size() );
+        int[] rpo = newNumbering( graph.size() );
+        int reached = depthFirstSearch( graph, entry, pre, rpo );
+        for( int v = 0; v < rpo.length; v++ ) {
+            if( rpo[v] != -1 ) {
+                rpo[v] = reached - 1 - rpo[v];
+            }
+        }
+        return rpo;
+    }
+    /** Calculate a topological numbering of the whole graph using Kahn's
+     * algorithm, which repeatedly removes a vertex with no remaining
+     * incoming edges. Ties are broken in favour of the lowest index.
+     * @return the position of each vertex in a topological order
+     * @throws IllegalArgumentException if the graph has a cycle
+     */
+    public static int[] topologicalOrder( DGraph<?,?> graph ) {
+        int n = graph.size();
+        int[] inDegree = new int[n];
+        for( int u = 0; u < n; u++ ) {
+            for( int i = 0; i < graph.degree( u ); i++ ) {
+                inDegree[graph.target( u, i )]++;
+            }
+        }
+        int[] number = newNumbering( n );
+        // Vertices with no remaining incoming edges, used as a stack
+        int[] ready = new int[n];
+        int sp = 0;
+        for( int u = n - 1; u >= 0; u-- ) {
+            if( inDegree[u] == 0 ) {
+                ready[sp++] = u;
+            }
+        }
+        int next = 0;
+        while( sp > 0 ) {
+            int u = ready[--sp];
+            number[u] = next++;
+            for( int i = graph.degree( u ) - 1; i >= 0; i-- ) {
+                int w = graph.target( u, i );
+                if( --inDegree[w] == 0 ) {
+                    ready[sp++] = w;
+                }
+            }
+        }
+        if( next < n ) {
+            throw new IllegalArgumentException(
+                    "Graph has a cycle - no topological order" );
+        }
+        return number;
+    }
+    /** Convert a numbering into the corresponding order.
+     * @param number numbering indexed by vertex, -1 for unnumbered vertices
+     * @return the numbered vertices in increasing order of their number
+     */
+    public static int[] order( int[] number ) {
+        int count = 0;
+        for( int k : number ) {
+            if( k != -1 ) {
+                count++;
+            }
+        }
+        int[] order = new int[count];
+        for( int v = 0; v < number.length; v++ ) {
+            if( number[v] != -1 ) {
+                order[number[v]] = v;
+            }
+        }
+        return order;
+    }
+
+    /** Iterative depth first search from entry, visiting the edges of each
+     * vertex in order, and numbering the vertices as they are first reached
+     * and as they are finished.
+     * @param pre set to the preorder number of each reached vertex
+     * @param post set to the postorder number of each reached vertex
+     * @requires pre and post are filled with -1 and of length graph.size()
+     * @return the number of vertices reached
+     */
+    private static int depthFirstSearch( DGraph<?,?> graph, int entry,
+            int[] pre, int[] post ) {
+        int n = graph.size();
+        int[] callVertex = new int[n];
+        int[] callEdge = new int[n];
+        int top = 0;
+        int preCount = 0, postCount = 0;
+        callVertex[0] = entry;
+        callEdge[0] = 0;
+        pre[entry] = preCount++;
+        while( top >= 0 ) {
+            int v = callVertex[top];
+            int i = callEdge[top];
+            if( i < graph.degree( v ) ) {
+                callEdge[top]++;
+                int w = graph.target( v, i );
+                if( pre[w] == -1 ) {
+                    top++;
+                    callVertex[top] = w;
+                    callEdge[top] = 0;
+                    pre[w] = preCount++;
+                }
+            } else {
+                post[v] = postCount++;
+                top--;
+            }
+        }
+        return postCount;
+    }
+    /** @return an array of length n filled with -1 */
+    private static int[] newNumbering( int n ) {
+        int[] number = new int[n];
+        java.util.Arrays.fill( number, -1 );
+        return number;
+    }
+}
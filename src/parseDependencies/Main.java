@@ -1,7 +1,21 @@
 package parseDependencies;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
+import dependencies.Dependencies;
+import dependencies.EditSession;
+import dependencies.FlowGraph;
+import dependencies.FlowGraphIO;
 import dependencies.Program;
+import dependencies.Statement;
+import graphs.Renumbering;
 import parseDependencies.Parser;
 import parseDependencies.Scanner;
 import source.ErrorHandler;
@@ -17,10 +31,28 @@ public class Main {
     /** Print usage information */
     public static void usage() {
         System.out.println(
-            "Usage: java parser.Main [-dhp] <filename>\n"+
+            "Usage: java parser.Main [-bcdhmnprstuw] [-j[n]] [-qvars] [-eedit]" +
+            " <filename>\n"+
+            "  -b  =  time the structural analysis on 1 .. n threads\n" +
+            "  -c  =  solve a strongly connected component at a time\n" +
             "  -d  =  debug parse\n" +
+            "  -e  =  then edit the program and update the dependencies;\n" +
+            "         n deletes the statement on line n, n=m replaces it\n" +
+            "         by the statement on line m, and n+m or n^m inserts\n" +
+            "         the statement on line m after or before it\n" +
             "  -h  =  output this usage information\n" +
+            "  -j  =  structural analysis on n threads (default all)\n" +
+            "  -m  =  analyse the syntax tree, summarising repeated\n" +
+            "         statements once; not with -j on more than 1 thread\n" +
+            "  -n  =  time the solver on the flow graph as built and\n" +
+            "         renumbered in each order\n" +
             "  -p  =  parse only - no analysis\n" +
+            "  -q  =  only the dependencies of vars, separated by commas\n" +
+            "  -r  =  use the original recursive solver\n" +
+            "  -s  =  print solver statistics\n" +
+            "  -t  =  analyse the syntax tree without a flow graph\n" +
+            "  -u  =  do not coalesce straight-line statements\n" +
+            "  -w  =  write the flow graph, read it back and compare\n" +
             " <filename> is parsed and if no errors the graph" +
             " is analysed unless -p is given." );
     }
@@ -40,17 +72,90 @@ public class Main {
         boolean analyse = true;
          /** Debug mode for parser - quite verbose */
         boolean debugParse = false;
+        /** Method of solving the dependency equations */
+        FlowGraph.Solver solver = FlowGraph.Solver.WORKLIST;
+        /** Print solver statistics */
+        boolean statistics = false;
+        /** Analysis engine */
+        Program.Engine engine = Program.Engine.FLOW_GRAPH;
+        /** Threads used by the structural analysis */
+        int threads = 1;
+        /** Summarise repeated statements once */
+        boolean memoise = false;
+        /** Variables whose dependencies are queried, or null for all */
+        Set<String> targets = null;
+        /** Time the structural analysis on increasing numbers of threads */
+        boolean benchmark = false;
+        /** Time the solver on the flow graph in each vertex order */
+        boolean renumbering = false;
+        /** Coalesce straight-line statements into blocks */
+        boolean coalesce = true;
+        /** Check that the flow graph reads back as it was written */
+        boolean roundTrip = false;
+        /** Edits made after the analysis, in order */
+        List<String> edits = new ArrayList<String>();
 
         /* Process command line arguments */
         for( String arg : args ) {
             if( arg.charAt(0) == '-' ) { /* Option */
                 switch( arg.charAt(1) ) {
+                case 'b': /* Scaling benchmark */
+                    benchmark = true;
+                    break;
+                case 'c': /* Component solver */
+                    solver = FlowGraph.Solver.COMPONENTS;
+                    break;
                 case 'd': /* Debug parse */
                     debugParse = true;
                     break;
+                case 'e': /* Edit */
+                    edits.add( arg.substring( 2 ) );
+                    break;
+                case 'j': /* Parallel structural analysis */
+                    engine = Program.Engine.STRUCTURAL;
+                    threads = Runtime.getRuntime().availableProcessors();
+                    if( arg.length() > 2 ) {
+                        try {
+                            threads = Integer.parseInt( arg.substring( 2 ) );
+                        } catch( NumberFormatException e ) {
+                            threads = 0;
+                        }
+                    }
+                    if( threads < 1 ) {
+                        usage();
+                        System.exit( 1 );
+                    }
+                    break;
+                case 'm': /* Memoised structural analysis */
+                    engine = Program.Engine.STRUCTURAL;
+                    memoise = true;
+                    break;
+                case 'n': /* Renumbering benchmark */
+                    renumbering = true;
+                    break;
                 case 'p': /* Parse only */
                     analyse = false;
                     break;
+                case 'q': /* Query */
+                    targets = new TreeSet<String>( 
+                            Arrays.asList( arg.substring( 2 ).split( "," ) ) );
+                    targets.remove( "" );
+                    break;
+                case 'r': /* Recursive solver */
+                    solver = FlowGraph.Solver.RECURSIVE;
+                    break;
+                case 's': /* Solver statistics */
+                    statistics = true;
+                    break;
+                case 't': /* Structural analysis */
+                    engine = Program.Engine.STRUCTURAL;
+                    break;
+                case 'u': /* Uncoalesced */
+                    coalesce = false;
+                    break;
+                case 'w': /* Flow graph round trip */
+                    roundTrip = true;
+                    break;
                 case 'h': /* Help */
                 default:
                     usage();
@@ -61,6 +166,11 @@ public class Main {
                 srcFile = arg;
             }
         }
+        if( memoise && threads > 1 ) {
+            System.out.println( "-m cannot be combined with -j on more " +
+                    "than one thread" );
+            System.exit( 1 );
+        }
         try {
             /* Set up the input source stream for the source file */
             if( srcFile == null ) {
@@ -73,9 +183,44 @@ public class Main {
             parsedProgram = parse( src, debugParse );
             if( analyse && parsedProgram != null ) {
                 /* Perform the analysis */
+                parsedProgram.setSolver( solver );
+                parsedProgram.setCoalesce( coalesce );
+                parsedProgram.setEngine( engine );
+                if( benchmark ) {
+                    benchmark( parsedProgram, System.out, threads == 1 ?
+                            Runtime.getRuntime().availableProcessors() : 
+                            threads, 5 );
+                }
+                if( renumbering ) {
+                    benchmarkOrders( parsedProgram, System.out, solver,
+                            coalesce, 5 );
+                }
+                if( roundTrip ) {
+                    roundTrip( parsedProgram, System.out, solver, coalesce );
+                }
+                parsedProgram.setThreads( threads );
+                parsedProgram.setMemoise( memoise );
                 parsedProgram.buildProgram();
-                parsedProgram.analyse();
+                if( targets != null ) {
+                    try {
+                        parsedProgram.query( targets );
+                    } catch( IllegalArgumentException e ) {
+                        System.out.println( "Query: " + e.getMessage() );
+                    }
+                } else {
+                    parsedProgram.analyse();
+                }
                 parsedProgram.printDependencies( System.out );
+                if( statistics ) {
+                    parsedProgram.printStatistics( System.out );
+                }
+                if( !edits.isEmpty() ) {
+                    EditSession session = parsedProgram.edit();
+                    for( String edit : edits ) {
+                        edit( session, src, edit );
+                        parsedProgram.printDependencies( System.out );
+                    }
+                }
                 errors.flush();
                 System.out.println( "Analysis complete" );
             }
@@ -86,6 +231,183 @@ public class Main {
         }
     }
 
+    /** Time the structural analysis of a program on 1 .. maxThreads
+     * threads, taking the best of a number of runs for each, and check
+     * that each gives the same dependencies as on one thread. Each run
+     * analyses a fresh copy of the program, which is left unchanged.
+     * @param program to be analysed
+     * @param out stream on which the times are printed
+     * @param maxThreads largest number of threads timed
+     * @param runs number of runs on each number of threads
+     */
+    private static void benchmark( Program program, PrintStream out,
+            int maxThreads, int runs ) {
+        Dependencies expected = null;
+        long base = 0;
+        for( int n = 1; n <= maxThreads; n++ ) {
+            Dependencies dependencies = null;
+            long best = Long.MAX_VALUE;
+            for( int run = 0; run < runs; run++ ) {
+                Program copy = new Program( program.getSymbols(),
+                        program.getInputs(), program.getBody() );
+                copy.setEngine( Program.Engine.STRUCTURAL );
+                copy.setThreads( n );
+                long start = System.nanoTime();
+                dependencies = copy.analyse();
+                best = Math.min( best, System.nanoTime() - start );
+            }
+            if( expected == null ) {
+                expected = dependencies;
+                base = best;
+            }
+            out.println( n + " thread" + (n == 1 ? ": " : "s: ") +
+                    (best / 1000000) + " ms, speedup " +
+                    String.format( "%.2f", (double)base / best ) +
+                    (dependencies.equals( expected ) ? "" : 
+                        ", DIFFERENT RESULT") );
+        }
+    }
+
+    /** Time the solver on the flow graph of a program numbered as it was
+     * built and renumbered in each order, taking the best of a number of
+     * runs for each, and report the mean distance between the indices of
+     * the nodes joined by an edge, which is smaller the more an analysis
+     * walking the graph touches nearby memory. Each run analyses a fresh
+     * copy of the program, which is left unchanged.
+     * @param program to be analysed
+     * @param out stream on which the times are printed
+     * @param solver used on each copy
+     * @param coalesce whether each copy is coalesced
+     * @param runs number of runs for each order
+     */
+    private static void benchmarkOrders( Program program, PrintStream out,
+            FlowGraph.Solver solver, boolean coalesce, int runs ) {
+        List<Renumbering.Order> orders = new ArrayList<Renumbering.Order>();
+        orders.add( null );
+        orders.addAll( Arrays.asList( Renumbering.Order.values() ) );
+        double[] span = new double[orders.size()];
+        long[] best = new long[orders.size()];
+        Arrays.fill( best, Long.MAX_VALUE );
+        Dependencies[] dependencies = new Dependencies[orders.size()];
+        // The orders take turns in each round, so that warming up favours
+        // none of them
+        for( int run = 0; run < runs; run++ ) {
+            for( int k = 0; k < orders.size(); k++ ) {
+                Program copy = new Program( program.getSymbols(),
+                        program.getInputs(), program.getBody() );
+                copy.setSolver( solver );
+                copy.setCoalesce( coalesce );
+                copy.setOrder( orders.get( k ) );
+                copy.buildProgram();
+                span[k] = copy.getFlowGraph().meanEdgeSpan();
+                long start = System.nanoTime();
+                dependencies[k] = copy.analyse();
+                best[k] = Math.min( best[k], System.nanoTime() - start );
+            }
+        }
+        for( int k = 0; k < orders.size(); k++ ) {
+            out.println( (k == 0 ? "AS_BUILT" : orders.get( k ).toString()) +
+                    ": mean edge span " + String.format( "%.1f", span[k] ) +
+                    ", solved in " + (best[k] / 1000000) + " ms" +
+                    (dependencies[k].equals( dependencies[0] ) ? "" : 
+                        ", DIFFERENT RESULT") );
+        }
+    }
+
+    /** Write the flow graph of a program with FlowGraphIO, read it back
+     * and compare the copy with the graph written. The graph is that of
+     * a fresh copy of the program, which is left unchanged.
+     * @param program whose flow graph is written
+     * @param out stream on which the result is printed
+     * @param solver used on the copy, which decides whether it is coalesced
+     * @param coalesce whether the copy is coalesced
+     */
+    private static void roundTrip( Program program, PrintStream out,
+            FlowGraph.Solver solver, boolean coalesce ) throws IOException {
+        Program copy = new Program( program.getSymbols(),
+                program.getInputs(), program.getBody() );
+        copy.setSolver( solver );
+        copy.setCoalesce( coalesce );
+        copy.buildProgram();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FlowGraphIO.write( bytes, copy.getFlowGraph() );
+        FlowGraph read = FlowGraphIO.read( 
+                new ByteArrayInputStream( bytes.toByteArray() ),
+                program.getSymbols() );
+        out.println( "Flow graph written in " + bytes.size() + 
+                " bytes and read back " + 
+                (read.sameAs( copy.getFlowGraph() ) ? "the same" : 
+                    "DIFFERENT") );
+    }
+
+    /** Make an edit given on the command line: n deletes the statement
+     * on line n, and n=m, n+m and n^m move the statement on line m to
+     * replace it, or to after or before it.
+     * @param session edit session of the program
+     * @param src program source
+     * @param edit description of the edit
+     */
+    private static void edit( EditSession session, Source src, String edit ) {
+        String[] lines = edit.split( "[=+^]" );
+        Statement statement = find( session.getBody(), src, 
+                Integer.parseInt( lines[0] ) );
+        Statement moved = lines.length < 2 ? null : 
+            find( session.getBody(), src, Integer.parseInt( lines[1] ) );
+        if( statement == null || (lines.length > 1 && moved == null) ) {
+            System.out.println( "Edit " + edit + ": no statement on line" );
+            return;
+        }
+        try {
+            if( moved == null ) {
+                System.out.println( "Delete line " + lines[0] );
+                session.delete( statement );
+                return;
+            }
+            session.delete( moved );
+            if( edit.indexOf( '=' ) >= 0 ) {
+                System.out.println( "Replace line " + lines[0] + 
+                        " by line " + lines[1] );
+                session.replace( statement, moved );
+            } else if( edit.indexOf( '+' ) >= 0 ) {
+                System.out.println( "Insert line " + lines[1] + 
+                        " after line " + lines[0] );
+                session.insertAfter( statement, moved );
+            } else {
+                System.out.println( "Insert line " + lines[1] + 
+                        " before line " + lines[0] );
+                session.insertBefore( statement, moved );
+            }
+        } catch( IllegalArgumentException e ) {
+            System.out.println( "Edit " + edit + ": " + e.getMessage() );
+        }
+    }
+
+    /** @return the outermost statement starting on a line, or null if 
+     * there is none */
+    private static Statement find( Statement statement, Source src, 
+            int line ) {
+        if( src.getLineNumber( statement.pos ) == line ) {
+            return statement;
+        }
+        Iterable<Statement> parts;
+        if( statement instanceof Statement.Compound ) {
+            parts = ((Statement.Compound)statement).getStatements();
+        } else if( statement instanceof Statement.Select ) {
+            parts = ((Statement.Select)statement).getStatements();
+        } else if( statement instanceof Statement.Repeat ) {
+            parts = Arrays.asList( ((Statement.Repeat)statement).getStatement() );
+        } else {
+            return null;
+        }
+        for( Statement s : parts ) {
+            Statement found = find( s, src, line );
+            if( found != null ) {
+                return found;
+            }
+        }
+        return null;
+    }
+
     /** Parse the program
      * @param src program source
      * @param errors handler for errors
@@ -1,8 +1,8 @@
 package parseDependencies;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
@@ -12,6 +12,7 @@ import dependencies.DependSet;
 import dependencies.Primitive;
 import dependencies.Program;
 import dependencies.Statement;
+import dependencies.SymbolTable;
 import source.ErrorHandler;
 import source.Errors;
 import source.Position;
@@ -62,6 +63,8 @@ public class Parser {
     private Source source;
     /** The object to report errors to */
     private Errors errors = ErrorHandler.getErrorHandler();
+    /** Numbering of the variables of the program */
+    private SymbolTable symbols = new SymbolTable();
     /** Track nesting depth in parsing rules */
     private int debugLevel = 0;
     
@@ -275,11 +278,14 @@ public class Parser {
         }
         SortedSet<String> inputs = parseInputVariables(
                 recoverSet.union( STATEMENT_START_SET ) );
+        for( String input : inputs ) {
+            symbols.intern( input );
+        }
         Statement statement = parseStatement( recoverSet );
         /* We can't use match( Token.END_OF_FILE ) because there is 
          * nothing following end of file */
         endRule( "Program", recoverSet );
-        return new Program( inputs, statement );
+        return new Program( symbols, inputs, statement );
     }
     /** RULE: InputVariables -> KW_INPUTS Variables SEMICOLON */
     private SortedSet<String> parseInputVariables( TokenSet recoverSet ) {
@@ -359,6 +365,9 @@ public class Parser {
         String varName = token.getName();;
         Position pos = token.getPosn();
         match( Token.IDENTIFIER ); // can't fail
+        /* Every variable is numbered while parsing, so that the analysis
+         * only reads the symbol table, possibly on several threads */
+        symbols.intern( varName );
         match( Token.ASSIGN, EXPRESSION_START_SET );
         DependSet depends = parseExpression( 
                 recoverSet.union(Token.SEMICOLON) );
@@ -369,18 +378,18 @@ public class Parser {
     /** RULE: Expression -> NUMBER | Variables */
     private DependSet parseExpression( TokenSet recoverSet ) {
         if( !beginRule( "Expression", EXPRESSION_START_SET, recoverSet ) ) {
-            return new DependSet();
+            return new DependSet( symbols );
         }
         DependSet depends;
         switch ( token.getKind() ) {
         case NUMBER:
             // No dependencies
             match( Token.NUMBER );
-            depends = new DependSet();
+            depends = new DependSet( symbols );
             break;
         case IDENTIFIER:
             SortedSet<String> variables = parseVariables( recoverSet );
-            depends = new DependSet( variables );
+            depends = new DependSet( symbols, variables );
             break;
         default:
             depends = null;
@@ -395,7 +404,7 @@ public class Parser {
         beginRule( "Compound Statement", Token.LCURLY ); // can't fail
         Position pos = token.getPosn();
         match( Token.LCURLY );  // can't fail
-        List<Statement> statements = new LinkedList<Statement>();
+        List<Statement> statements = new ArrayList<Statement>();
         statements.add( parseStatement( 
             recoverSet.union( STATEMENT_START_SET.union(Token.RCURLY) ) ) );
         while( !token.isMatch( Token.RCURLY ) ) {